@@ -3,6 +3,7 @@ package org.jvnet.hudson.plugins.artifactdownloader;
 import java.io.Serializable;
 
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 
 /**
  * Represents an artifact to be resolved or uploaded.
@@ -20,6 +21,7 @@ public class ArtifactConfig implements Serializable {
     private final String version;
     private final String extension;
     private final String targetFileName;
+    private boolean streamToTarget;
 
    @DataBoundConstructor
     public ArtifactConfig(String groupId, String artifactId, String classifier, String version, String extension, String targetFileName) {
@@ -73,6 +75,19 @@ public class ArtifactConfig implements Serializable {
         return targetFileName;
     }
 
+    /**
+     * @return <code>true</code> if the artifact is streamed straight into the target file instead of
+     *         being resolved into the local repository and copied from there
+     */
+    public boolean isStreamToTarget() {
+        return streamToTarget;
+    }
+
+    @DataBoundSetter
+    public void setStreamToTarget(boolean streamToTarget) {
+        this.streamToTarget = streamToTarget;
+    }
+
     @Override
     public String toString() {
         return "[Artifact " + groupId + ":" + artifactId + ":" + extension + ":" + classifier + ":" + version + "]";
@@ -0,0 +1,176 @@
+package org.jvnet.hudson.plugins.artifactdownloader;
+
+import hudson.Extension;
+import hudson.model.ParametersAction;
+import hudson.model.Project;
+import hudson.model.Queue;
+import hudson.model.queue.QueueListener;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.LogTaskListener;
+import hudson.util.NamingThreadFactory;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.jvnet.hudson.plugins.artifactdownloader.aether.RepositoryConnector;
+
+/**
+ * Resolves the artifacts of queued builds into the shared local repository while they wait for
+ * an executor, so the download overlaps with the time spent in the queue. A build starting while
+ * its artifacts are still being fetched joins the running resolution. Only steps resolving on the
+ * controller into the shared repository are prefetched, coordinates containing macros can not be
+ * expanded before the build exists and are skipped.
+ */
+@Extension
+public class ArtifactPrefetcher extends QueueListener {
+
+    public static final int DEFAULT_MAX_QUEUE = 100;
+
+    /** prefetches waiting for a thread per thread, further ones are dropped */
+    private static final int BACKLOG_PER_THREAD = 10;
+
+    private static final Logger log = Logger.getLogger(ArtifactPrefetcher.class.getName());
+
+    private final ConcurrentMap<Long, Future<?>> pending = new ConcurrentHashMap<Long, Future<?>>();
+    private ThreadPoolExecutor executor;
+
+    @Override
+    public void onEnterWaiting(Queue.WaitingItem wi) {
+        RepositoryConfiguration config = RepositoryConfiguration.get();
+        if (config == null || config.getPrefetchThreads() <= 0 || !(wi.task instanceof Project)) {
+            return;
+        }
+        int queued = Queue.getInstance().getItems().length;
+        if (queued > config.getPrefetchMaxQueue()) {
+            log.fine("not prefetching artifacts of " + wi.task.getFullDisplayName() + ", " + queued + " items in the queue");
+            return;
+        }
+        List<ArtifactResolver> steps = ((Project<?, ?>) wi.task).getBuildersList().getAll(ArtifactResolver.class);
+        VersionOverrides overrides = VersionOverrides.of(wi.getActions(ParametersAction.class));
+        final List<Prefetch> prefetches = new ArrayList<Prefetch>();
+        for (ArtifactResolver step : steps) {
+            if (step.isResolveOnAgent() || step.isIsolatedRepository()) {
+                continue;
+            }
+            List<ArtifactConfig> artifacts = new ArrayList<ArtifactConfig>();
+            for (ArtifactConfig ac : step.getArtifacts()) {
+                ArtifactConfig resolved = expand(ac, overrides);
+                if (resolved != null) {
+                    artifacts.add(resolved);
+                }
+            }
+            if (!artifacts.isEmpty()) {
+                prefetches.add(new Prefetch(step, artifacts));
+            }
+        }
+        if (prefetches.isEmpty()) {
+            return;
+        }
+        final long id = wi.getId();
+        final String name = wi.task.getFullDisplayName();
+        try {
+            pending.put(id, getExecutor(config.getPrefetchThreads()).submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (Prefetch prefetch : prefetches) {
+                            prefetch.run(name);
+                        }
+                    } finally {
+                        pending.remove(id);
+                    }
+                }
+            }));
+        } catch (RejectedExecutionException e) {
+            log.fine("not prefetching artifacts of " + name + ", too many prefetches waiting");
+        }
+    }
+
+    @Override
+    public void onLeft(Queue.LeftItem li) {
+        // a build which started already resolves on its own, one which got cancelled needs nothing
+        Future<?> prefetch = pending.remove((long) li.getId());
+        if (prefetch != null) {
+            prefetch.cancel(false);
+        }
+    }
+
+    /**
+     * @return the coordinates with the version taken from the build parameters, <code>null</code>
+     *         if they can not be determined before the build runs
+     */
+    private static ArtifactConfig expand(ArtifactConfig ac, VersionOverrides overrides) {
+        String version = ac.getVersion();
+        String classifier = ac.getClassifier();
+        String extension = ac.getExtension();
+        VersionOverrides.ArtifactOverride override = overrides.get(ac.getGroupId(), ac.getArtifactId());
+        if (override != null) {
+            version = override.getVersion();
+            classifier = override.getClassifier() == null ? classifier : override.getClassifier();
+            extension = override.getExtension() == null ? extension : override.getExtension();
+        }
+        if (ac.isStreamToTarget() || StringUtils.isBlank(version) || containsMacro(ac.getGroupId()) || containsMacro(ac.getArtifactId())
+                || containsMacro(version) || containsMacro(classifier) || containsMacro(extension)) {
+            return null;
+        }
+        return new ArtifactConfig(ac.getGroupId(), ac.getArtifactId(), classifier, version, extension, null);
+    }
+
+    private static boolean containsMacro(String value) {
+        return value != null && value.indexOf('$') >= 0;
+    }
+
+    private synchronized ThreadPoolExecutor getExecutor(int threads) {
+        if (executor == null || executor.getMaximumPoolSize() != threads) {
+            if (executor != null) {
+                executor.shutdown();
+            }
+            executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(threads * BACKLOG_PER_THREAD),
+                    new NamingThreadFactory(new DaemonThreadFactory(), "ArtifactPrefetcher"));
+            executor.allowCoreThreadTimeOut(true);
+        }
+        return executor;
+    }
+
+    /**
+     * The artifacts of a single step.
+     */
+    private static final class Prefetch {
+        private final ArtifactResolver step;
+        private final List<ArtifactConfig> artifacts;
+
+        Prefetch(ArtifactResolver step, List<ArtifactConfig> artifacts) {
+            this.step = step;
+            this.artifacts = artifacts;
+        }
+
+        void run(String name) {
+            RepositoryConnector rc = null;
+            try {
+                File localRepository = RepositoryConfiguration.get().getLocalRepoPath();
+                rc = new RepositoryConnector(new LogTaskListener(log, Level.FINEST).getLogger(), step.getRepositories(), localRepository);
+                long start = System.currentTimeMillis();
+                int resolved = rc.prefetchArtifacts(artifacts);
+                log.fine("prefetched " + resolved + " of " + artifacts.size() + " artifacts of " + name + " in "
+                        + (System.currentTimeMillis() - start) + " ms");
+            } catch (Exception e) {
+                log.log(Level.FINE, "prefetching the artifacts of " + name + " failed", e);
+            } finally {
+                IOUtils.closeQuietly(rc);
+            }
+        }
+    }
+}
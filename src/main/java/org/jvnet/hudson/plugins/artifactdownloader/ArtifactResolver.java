@@ -13,20 +13,23 @@ import java.util.logging.Logger;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.jenkinsci.plugins.tokenmacro.TokenMacro;
+import org.jvnet.hudson.plugins.artifactdownloader.aether.DeliveryStrategy;
 import org.jvnet.hudson.plugins.artifactdownloader.aether.RepositoryConnector;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.StaplerRequest;
 
 import hudson.Extension;
+import hudson.FilePath;
 import hudson.Launcher;
 import hudson.model.AbstractBuild;
 import hudson.model.AbstractProject;
 import hudson.model.BuildListener;
 import hudson.model.Descriptor;
-import hudson.model.ParameterValue;
-import hudson.model.ParametersAction;
+import hudson.model.Node;
 import hudson.tasks.BuildStepDescriptor;
 import hudson.tasks.Builder;
+import jenkins.model.Jenkins;
 import net.sf.json.JSONObject;
 
 /**
@@ -42,9 +45,23 @@ public class ArtifactResolver extends Builder implements Serializable {
 
     private static final String DEFAULT_TARGET = "";
 
+    /**
+     * Location of the local repository on agents, relative to the agent's root directory.
+     */
+    private static final String AGENT_LOCAL_REPOSITORY = "repository-connector-repo";
+
     public String repoid;
     public String targetDirectory;
     public List<ArtifactConfig> artifacts;
+    private boolean isolatedRepository;
+    private int parallelDownloads = 1;
+    private boolean resolveOnAgent;
+    private DeliveryStrategy deliveryStrategy;
+    private boolean incremental;
+    private String fallbackRepoids;
+    private boolean unpack;
+    private String unpackIncludes;
+    private String unpackExcludes;
     
     @DataBoundConstructor
     public ArtifactResolver(
@@ -61,6 +78,116 @@ public class ArtifactResolver extends Builder implements Serializable {
         return StringUtils.isBlank(targetDirectory) ? DEFAULT_TARGET : targetDirectory;
     }
 
+    /**
+     * @return <code>true</code> if this step resolves into its own temporary local repository
+     *         instead of the shared one configured globally
+     */
+    public boolean isIsolatedRepository() {
+        return isolatedRepository;
+    }
+
+    @DataBoundSetter
+    public void setIsolatedRepository(boolean isolatedRepository) {
+        this.isolatedRepository = isolatedRepository;
+    }
+
+    /**
+     * @return the number of artifacts resolved concurrently by this step
+     */
+    public int getParallelDownloads() {
+        return parallelDownloads < 1 ? 1 : parallelDownloads;
+    }
+
+    @DataBoundSetter
+    public void setParallelDownloads(int parallelDownloads) {
+        this.parallelDownloads = parallelDownloads;
+    }
+
+    /**
+     * @return <code>true</code> if the artifacts are resolved on the node the build runs on and
+     *         written into its workspace, instead of being resolved on the controller
+     */
+    public boolean isResolveOnAgent() {
+        return resolveOnAgent;
+    }
+
+    @DataBoundSetter
+    public void setResolveOnAgent(boolean resolveOnAgent) {
+        this.resolveOnAgent = resolveOnAgent;
+    }
+
+    /**
+     * @return the preferred way of delivering resolved files to their target
+     */
+    public DeliveryStrategy getDeliveryStrategy() {
+        return deliveryStrategy == null ? DeliveryStrategy.DEFAULT : deliveryStrategy;
+    }
+
+    @DataBoundSetter
+    public void setDeliveryStrategy(DeliveryStrategy deliveryStrategy) {
+        this.deliveryStrategy = deliveryStrategy;
+    }
+
+    /**
+     * @return <code>true</code> if existing target files matching the published checksum are kept as they are
+     */
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    @DataBoundSetter
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    /**
+     * @return comma separated ids of further repositories to resolve the artifacts from
+     */
+    public String getFallbackRepoids() {
+        return fallbackRepoids;
+    }
+
+    @DataBoundSetter
+    public void setFallbackRepoids(String fallbackRepoids) {
+        this.fallbackRepoids = StringUtils.trimToNull(fallbackRepoids);
+    }
+
+    /**
+     * @return <code>true</code> if zip, tar and tar.gz artifacts are extracted into the target directory
+     */
+    public boolean isUnpack() {
+        return unpack;
+    }
+
+    @DataBoundSetter
+    public void setUnpack(boolean unpack) {
+        this.unpack = unpack;
+    }
+
+    /**
+     * @return comma separated patterns of the archive entries to extract, <code>null</code> for all entries
+     */
+    public String getUnpackIncludes() {
+        return unpackIncludes;
+    }
+
+    @DataBoundSetter
+    public void setUnpackIncludes(String unpackIncludes) {
+        this.unpackIncludes = StringUtils.trimToNull(unpackIncludes);
+    }
+
+    /**
+     * @return comma separated patterns of the archive entries not to extract
+     */
+    public String getUnpackExcludes() {
+        return unpackExcludes;
+    }
+
+    @DataBoundSetter
+    public void setUnpackExcludes(String unpackExcludes) {
+        this.unpackExcludes = StringUtils.trimToNull(unpackExcludes);
+    }
+
     public boolean failOnError() {
         return true;
     }
@@ -79,20 +206,26 @@ public class ArtifactResolver extends Builder implements Serializable {
         
         try {
 
-        	RepositoryConfig rConf = getRepoById(repoid);
-        	if(rConf==null) {
-        		throw new RuntimeException("invalid repo id: "+repoid);
-        	}
+        	List<RepositoryConfig> repositories = getRepositories();
         	
-        	rc = new RepositoryConnector(logger, Collections.singletonList(rConf));	
         	List<ArtifactConfig> resolvedArtifacts = new ArrayList<ArtifactConfig>();
+        	VersionOverrides overrides = VersionOverrides.of(build);
         	
         	for(ArtifactConfig ac : getArtifacts()) {
         		
         		String groupId = TokenMacro.expandAll(build, listener, ac.getGroupId()); 
         		String artifactId = TokenMacro.expandAll(build, listener, ac.getArtifactId());
-        		String version = checkVersionOverride(build, listener, groupId, artifactId, ac.getVersion());
+        		String version = ac.getVersion();
         		String extension = TokenMacro.expandAll(build, listener, ac.getExtension());
+        		String classifier = TokenMacro.expandAll(build, listener, ac.getClassifier());
+        		VersionOverrides.ArtifactOverride override = overrides.get(groupId, artifactId);
+        		if(override != null) {
+        			logger.println("Overriding configured version '" + version + "' with version '"
+        					+ override.getVersion() + "' from build parameter " + override.getParameterName());
+        			version = override.getVersion();
+        			classifier = override.getClassifier() == null ? classifier : override.getClassifier();
+        			extension = override.getExtension() == null ? extension : override.getExtension();
+        		}
         		
         		String targetDirectory = TokenMacro.expandAll(build, listener, getTargetDirectory());
         		if(StringUtils.isEmpty(targetDirectory)) {
@@ -100,14 +233,36 @@ public class ArtifactResolver extends Builder implements Serializable {
         			targetDirectory = targetDirectory+"/";
         		}
         		
-        		String targetFilename = new File(targetDirectory+TokenMacro.expandAll(build, listener, ac.getTargetFileName())).getAbsolutePath();
+        		String targetFilename = targetDirectory+TokenMacro.expandAll(build, listener, ac.getTargetFileName());
+        		if(!resolveOnAgent) {
+        			targetFilename = new File(targetFilename).getAbsolutePath();
+        		}
         		
-        		ArtifactConfig acNew = new ArtifactConfig(groupId, artifactId, extension, version, extension, targetFilename);
+        		ArtifactConfig acNew = new ArtifactConfig(groupId, artifactId, classifier, version, extension, targetFilename);
+        		acNew.setStreamToTarget(ac.isStreamToTarget());
                 resolvedArtifacts.add(acNew);
                 
         	}
         	
-        	rc.downloadArtifacts(resolvedArtifacts);
+        	if(resolveOnAgent) {
+        		FilePath workspace = build.getWorkspace();
+        		if(workspace==null) {
+        			throw new RuntimeException("no workspace available to resolve the artifacts into");
+        		}
+        		workspace.act(new RemoteArtifactDownload(listener, repositories, resolvedArtifacts,
+        				getAgentLocalRepository(build), getParallelDownloads(), getDeliveryStrategy(), incremental,
+        				RepositoryConfiguration.get().getNegativeCacheTtl(), unpack, unpackIncludes, unpackExcludes));
+        	} else {
+        		File localRepository = isolatedRepository ? null : RepositoryConfiguration.get().getLocalRepoPath();
+        		rc = new RepositoryConnector(logger, repositories, localRepository);
+        		rc.setThreads(getParallelDownloads());
+        		rc.setDeliveryStrategy(getDeliveryStrategy());
+        		rc.setIncremental(incremental);
+        		rc.setUnpack(unpack);
+        		rc.setUnpackIncludes(unpackIncludes);
+        		rc.setUnpackExcludes(unpackExcludes);
+        		rc.downloadArtifacts(resolvedArtifacts);
+        	}
         	return true;
         } catch (Exception e) {
             return logError("Exception: ", logger, e);
@@ -116,39 +271,52 @@ public class ArtifactResolver extends Builder implements Serializable {
 		}
     }
 
-    private RepositoryConfig getRepoById(String id) {
-        return RepositoryConfiguration.get().getRepositoryMap().get(id);
+    /**
+     * The repositories on agents are not bounded by the local repository quota, only the one of the
+     * controller is evicted.
+     *
+     * @return the path of the local repository on the node the build runs on, <code>null</code>
+     *         if this step uses an isolated repository
+     */
+    private String getAgentLocalRepository(AbstractBuild<?, ?> build) {
+        if (isolatedRepository) {
+            return null;
+        }
+        Node node = build.getBuiltOn();
+        if (node == null || node == Jenkins.getInstance()) {
+            return RepositoryConfiguration.get().getLocalRepoPath().getAbsolutePath();
+        }
+        FilePath root = node.getRootPath();
+        if (root == null) {
+            throw new RuntimeException("node " + node.getDisplayName() + " is offline");
+        }
+        return root.child(AGENT_LOCAL_REPOSITORY).getRemote();
     }
 
     /**
-     * This method searches for a build parameter of type VersionParameterValue and
-     * substitutes the configured version by the one, defined by the parameter.
-     *
-     * @param build the build
-     * @param listener the build listener
-     * @param groupId the Maven group id
-     * @param artifactId the Maven artifact id
-     * @param version the version
-     * @return The overridden version
+     * @return the configured repository followed by the fallback repositories, in the configured order
      */
-    private String checkVersionOverride(AbstractBuild<?, ?> build, BuildListener listener, String groupId, String artifactId, String version) {
-        String result = version;
-        List<ParametersAction> parameterActionList = build.getActions(ParametersAction.class);
-        for (ParametersAction parameterAction : parameterActionList) {
-            List<ParameterValue> parameterValueList = parameterAction.getParameters();
-            for (ParameterValue parameterValue : parameterValueList) {
-                if (parameterValue instanceof VersionParameterValue) {
-                    VersionParameterValue versionParameterValue = (VersionParameterValue) parameterValue;
-                    if (groupId != null && groupId.equals(versionParameterValue.getGroupid()) &&
-                            artifactId != null && artifactId.equals(versionParameterValue.getArtifactid())) {
-                        listener.getLogger().println("Overriding configured version '" + version + "' with version '"
-                                + versionParameterValue.value + "' from build parameter");
-                        result = versionParameterValue.value;
-                    }
-                }
+    List<RepositoryConfig> getRepositories() {
+        List<RepositoryConfig> out = new ArrayList<RepositoryConfig>();
+        List<String> ids = new ArrayList<String>();
+        ids.add(repoid);
+        if (StringUtils.isNotBlank(fallbackRepoids)) {
+            Collections.addAll(ids, StringUtils.split(fallbackRepoids, ", "));
+        }
+        for (String id : ids) {
+            RepositoryConfig rConf = getRepoById(id);
+            if (rConf == null) {
+                throw new RuntimeException("invalid repo id: " + id);
+            }
+            if (!out.contains(rConf)) {
+                out.add(rConf);
             }
         }
-        return result;
+        return out;
+    }
+
+    private RepositoryConfig getRepoById(String id) {
+        return RepositoryConfiguration.get().getRepositoryMap().get(id);
     }
 
     private boolean logError(String msg, final PrintStream logger, Exception e) {
@@ -187,6 +355,14 @@ public class ArtifactResolver extends Builder implements Serializable {
             return repo;
         }
 
+        public DeliveryStrategy[] getDeliveryStrategies() {
+            return DeliveryStrategy.values();
+        }
+
+        public DeliveryStrategy getDefaultDeliveryStrategy() {
+            return DeliveryStrategy.DEFAULT;
+        }
+
         public Collection<RepositoryConfig> getRepos() {
             Collection<RepositoryConfig> repos = null;
             RepositoryConfiguration repoConfig = RepositoryConfiguration.get();
@@ -0,0 +1,43 @@
+package org.jvnet.hudson.plugins.artifactdownloader;
+
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.jvnet.hudson.plugins.artifactdownloader.aether.LocalRepositoryEvictor;
+
+/**
+ * Measures the shared local repository periodically and evicts the least recently used artifact
+ * versions if it grew beyond the configured quota.
+ */
+@Extension
+public class LocalRepositoryEviction extends AsyncPeriodicWork {
+
+    public LocalRepositoryEviction() {
+        super("Local repository eviction");
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return TimeUnit.MINUTES.toMillis(10);
+    }
+
+    @Override
+    protected void execute(TaskListener listener) throws IOException, InterruptedException {
+        RepositoryConfiguration config = RepositoryConfiguration.get();
+        if (config == null) {
+            return;
+        }
+        File localRepository = config.getLocalRepoPath();
+        long quota = config.getLocalRepositoryQuotaBytes();
+        LocalRepositoryEvictor evictor = LocalRepositoryEvictor.get();
+        long evictions = evictor.getEvictions();
+        long occupied = evictor.evict(localRepository, quota);
+        listener.getLogger().println(localRepository + ": " + occupied + " bytes" + (quota > 0 ? " of " + quota : "")
+                + ", evicted " + (evictor.getEvictions() - evictions) + " versions");
+    }
+}
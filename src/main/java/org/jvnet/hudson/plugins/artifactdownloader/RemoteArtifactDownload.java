@@ -0,0 +1,103 @@
+package org.jvnet.hudson.plugins.artifactdownloader;
+
+import hudson.model.TaskListener;
+import hudson.remoting.VirtualChannel;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import jenkins.MasterToSlaveFileCallable;
+
+import org.apache.commons.io.IOUtils;
+import org.jvnet.hudson.plugins.artifactdownloader.aether.DeliveryStrategy;
+import org.jvnet.hudson.plugins.artifactdownloader.aether.NegativeResultCache;
+import org.jvnet.hudson.plugins.artifactdownloader.aether.RepositoryConnector;
+
+/**
+ * Resolves artifacts on the node the callable is sent to and writes them into its workspace.
+ * Only the coordinates and the repository settings travel over the channel, the artifacts are
+ * transferred from the repository to the node directly.
+ */
+class RemoteArtifactDownload extends MasterToSlaveFileCallable<Boolean> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final TaskListener listener;
+    private final List<RepositoryConfig> repositories;
+    private final List<ArtifactConfig> artifacts;
+    private final String localRepository;
+    private final int threads;
+    private final DeliveryStrategy deliveryStrategy;
+    private final boolean incremental;
+    private final int negativeCacheTtl;
+    private final long negativeCacheGeneration;
+    private final boolean unpack;
+    private final String unpackIncludes;
+    private final String unpackExcludes;
+
+    /**
+     * @param localRepository path of the local repository on the node, <code>null</code> to resolve
+     *        into an isolated temporary repository
+     * @param negativeCacheTtl seconds the node remembers missing artifacts, see {@link NegativeResultCache}
+     * @param unpack <code>true</code> to extract archives into the target directory, restricted by the
+     *        include and exclude patterns
+     */
+    RemoteArtifactDownload(TaskListener listener, List<RepositoryConfig> repositories, List<ArtifactConfig> artifacts,
+            String localRepository, int threads, DeliveryStrategy deliveryStrategy, boolean incremental, int negativeCacheTtl,
+            boolean unpack, String unpackIncludes, String unpackExcludes) {
+        this.listener = listener;
+        this.repositories = new ArrayList<RepositoryConfig>(repositories);
+        this.artifacts = new ArrayList<ArtifactConfig>(artifacts);
+        this.localRepository = localRepository;
+        this.threads = threads;
+        this.deliveryStrategy = deliveryStrategy;
+        this.incremental = incremental;
+        this.negativeCacheTtl = negativeCacheTtl;
+        // taken on the controller, the node drops its missing results once the configuration changed
+        this.negativeCacheGeneration = NegativeResultCache.get().getGeneration();
+        this.unpack = unpack;
+        this.unpackIncludes = unpackIncludes;
+        this.unpackExcludes = unpackExcludes;
+    }
+
+    public Boolean invoke(File workspace, VirtualChannel channel) throws IOException, InterruptedException {
+        List<ArtifactConfig> targets = new ArrayList<ArtifactConfig>(artifacts.size());
+        for (ArtifactConfig ac : artifacts) {
+            File target = new File(ac.getTargetFileName());
+            if (!target.isAbsolute()) {
+                target = new File(workspace, ac.getTargetFileName());
+            }
+            File parent = target.getParentFile();
+            if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+                throw new IOException("unable to create directory " + parent.getAbsolutePath());
+            }
+            ArtifactConfig resolved = new ArtifactConfig(ac.getGroupId(), ac.getArtifactId(), ac.getClassifier(), ac.getVersion(),
+                    ac.getExtension(), target.getAbsolutePath());
+            resolved.setStreamToTarget(ac.isStreamToTarget());
+            targets.add(resolved);
+        }
+
+        NegativeResultCache.get().synchronize(negativeCacheGeneration);
+        NegativeResultCache.get().configure(negativeCacheTtl);
+        RepositoryConnector rc = null;
+        try {
+            rc = new RepositoryConnector(listener.getLogger(), repositories,
+                    localRepository == null ? null : new File(localRepository));
+            rc.setThreads(threads);
+            rc.setDeliveryStrategy(deliveryStrategy);
+            rc.setIncremental(incremental);
+            rc.setUnpack(unpack);
+            rc.setUnpackIncludes(unpackIncludes);
+            rc.setUnpackExcludes(unpackExcludes);
+            return rc.downloadArtifacts(targets);
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e.getMessage(), e);
+        } finally {
+            IOUtils.closeQuietly(rc);
+        }
+    }
+}
@@ -6,6 +6,7 @@ package org.jvnet.hudson.plugins.artifactdownloader;
 import java.io.Serializable;
 
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 
 /**
  * Represents a repository where artifacts can be resolved from or uploaded to.
@@ -17,12 +18,22 @@ public class RepositoryConfig implements Serializable, Comparable {
 
     private static final long serialVersionUID = 1L;
 
+    public static final int DEFAULT_RETRIES = 3;
+    public static final int DEFAULT_RETRY_BACKOFF = 1000;
+
     final private String url;
     final private String type;
     final private String id;
     final private String user;
     final private String password;
     final private boolean isRepositoryManager;
+    private Integer retries;
+    private Integer retryBackoff;
+    private Integer connectTimeout;
+    private Integer readTimeout;
+    private Integer maxConnections;
+    private Integer maxTransfers;
+    private Integer bandwidthLimit;
 
     @DataBoundConstructor
     public RepositoryConfig(String id, String type, String url, String user, String password, boolean repositoryManager) {
@@ -122,6 +133,92 @@ public class RepositoryConfig implements Serializable, Comparable {
         return password;
     }
 
+    /**
+     * @return how often a failed transfer is retried
+     */
+    public int getRetries() {
+        return retries == null ? DEFAULT_RETRIES : retries;
+    }
+
+    @DataBoundSetter
+    public void setRetries(int retries) {
+        this.retries = Math.max(0, retries);
+    }
+
+    /**
+     * @return milliseconds to wait before the first retry, the wait doubles with every further retry
+     */
+    public int getRetryBackoff() {
+        return retryBackoff == null ? DEFAULT_RETRY_BACKOFF : retryBackoff;
+    }
+
+    @DataBoundSetter
+    public void setRetryBackoff(int retryBackoff) {
+        this.retryBackoff = Math.max(0, retryBackoff);
+    }
+
+    /**
+     * @return milliseconds to wait for a connection, <code>0</code> for the default
+     */
+    public int getConnectTimeout() {
+        return connectTimeout == null ? 0 : connectTimeout;
+    }
+
+    @DataBoundSetter
+    public void setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = Math.max(0, connectTimeout);
+    }
+
+    /**
+     * @return milliseconds to wait for data on an open connection, <code>0</code> for the default
+     */
+    public int getReadTimeout() {
+        return readTimeout == null ? 0 : readTimeout;
+    }
+
+    @DataBoundSetter
+    public void setReadTimeout(int readTimeout) {
+        this.readTimeout = Math.max(0, readTimeout);
+    }
+
+    /**
+     * @return the maximum number of connections a download opens to this repository at the same time,
+     *         <code>0</code> for no limit
+     */
+    public int getMaxConnections() {
+        return maxConnections == null ? 0 : maxConnections;
+    }
+
+    @DataBoundSetter
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = Math.max(0, maxConnections);
+    }
+
+    /**
+     * @return the maximum number of transfers from this repository in flight at the same time, over all
+     *         builds; further transfers wait in line. <code>0</code> for no limit
+     */
+    public int getMaxTransfers() {
+        return maxTransfers == null ? 0 : maxTransfers;
+    }
+
+    @DataBoundSetter
+    public void setMaxTransfers(int maxTransfers) {
+        this.maxTransfers = Math.max(0, maxTransfers);
+    }
+
+    /**
+     * @return the bandwidth all transfers from this repository share in KB/s, <code>0</code> for no limit
+     */
+    public int getBandwidthLimit() {
+        return bandwidthLimit == null ? 0 : bandwidthLimit;
+    }
+
+    @DataBoundSetter
+    public void setBandwidthLimit(int bandwidthLimit) {
+        this.bandwidthLimit = Math.max(0, bandwidthLimit);
+    }
+
     /**
      * @return the isRepositoryManager
      */
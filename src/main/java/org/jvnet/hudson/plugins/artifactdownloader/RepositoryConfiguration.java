@@ -13,10 +13,17 @@ import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
 import jenkins.model.GlobalConfiguration;
+import jenkins.model.Jenkins;
 import net.sf.json.JSONArray;
 import net.sf.json.JSONObject;
 import org.apache.commons.lang.StringUtils;
+import org.jvnet.hudson.plugins.artifactdownloader.aether.NegativeResultCache;
+import org.jvnet.hudson.plugins.artifactdownloader.aether.RepositorySystemHolder;
+import org.kohsuke.stapler.HttpResponse;
+import org.kohsuke.stapler.HttpResponses;
+import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.interceptor.RequirePOST;
 
 /**
  * This class provides the global configuration for the plugin.
@@ -39,11 +46,30 @@ public class RepositoryConfiguration extends GlobalConfiguration implements Seri
 
     private String localRepository = "";
 
+    private int versionCacheTtl = VersionListCache.DEFAULT_TTL_SECONDS;
+    private int versionCacheSize = VersionListCache.DEFAULT_MAX_ENTRIES;
+
+    private int localRepositoryQuota;
+
+    private int negativeCacheTtl = NegativeResultCache.DEFAULT_TTL_SECONDS;
+
+    private int prefetchThreads;
+    private int prefetchMaxQueue = ArtifactPrefetcher.DEFAULT_MAX_QUEUE;
+
     public RepositoryConfiguration() {
         load();
         if (repos.isEmpty()) {
             repos.putAll(DEFAULT_REPOS);
         }
+        applySettings();
+    }
+
+    /**
+     * Passes the configured values on to the shared caches.
+     */
+    private void applySettings() {
+        VersionListCache.get().configure(versionCacheTtl, versionCacheSize);
+        NegativeResultCache.get().configure(negativeCacheTtl);
     }
 
     // Injecting the RepositoryConfiguration into the DescriptorImpl of the ArtifactDeployer or the ArtifactResolver did not work
@@ -55,6 +81,12 @@ public class RepositoryConfiguration extends GlobalConfiguration implements Seri
     public boolean configure(StaplerRequest req, JSONObject formData) throws Descriptor.FormException {
 
         localRepository = formData.getString("localRepository");
+        versionCacheTtl = formData.optInt("versionCacheTtl", VersionListCache.DEFAULT_TTL_SECONDS);
+        versionCacheSize = formData.optInt("versionCacheSize", VersionListCache.DEFAULT_MAX_ENTRIES);
+        localRepositoryQuota = Math.max(0, formData.optInt("localRepositoryQuota", 0));
+        negativeCacheTtl = formData.optInt("negativeCacheTtl", NegativeResultCache.DEFAULT_TTL_SECONDS);
+        prefetchThreads = Math.max(0, formData.optInt("prefetchThreads", 0));
+        prefetchMaxQueue = formData.optInt("prefetchMaxQueue", ArtifactPrefetcher.DEFAULT_MAX_QUEUE);
 
         repos.clear();
 
@@ -73,6 +105,11 @@ public class RepositoryConfiguration extends GlobalConfiguration implements Seri
             repos.putAll(DEFAULT_REPOS);
         }
 
+        RepositorySystemHolder.invalidate();
+        VersionListCache.get().invalidateAll();
+        NegativeResultCache.get().invalidateAll();
+        applySettings();
+
         save();
         return true;
     }
@@ -115,6 +152,68 @@ public class RepositoryConfiguration extends GlobalConfiguration implements Seri
     }
 
 
+    /**
+     * @return the maximum size of the local repository in megabytes, <code>0</code> if unlimited
+     */
+    public int getLocalRepositoryQuota() {
+        return localRepositoryQuota;
+    }
+
+    public long getLocalRepositoryQuotaBytes() {
+        return localRepositoryQuota * 1024L * 1024L;
+    }
+
+    /**
+     * @return seconds a missing artifact or an empty version list is remembered
+     */
+    public int getNegativeCacheTtl() {
+        return negativeCacheTtl;
+    }
+
+    /**
+     * @return the number of threads resolving the artifacts of queued builds, <code>0</code> if prefetching is disabled
+     */
+    public int getPrefetchThreads() {
+        return prefetchThreads;
+    }
+
+    /**
+     * @return the queue length above which no artifacts are prefetched any more
+     */
+    public int getPrefetchMaxQueue() {
+        return prefetchMaxQueue;
+    }
+
+    /**
+     * @return seconds a cached version list is served before it gets refreshed
+     */
+    public int getVersionCacheTtl() {
+        return versionCacheTtl;
+    }
+
+    /**
+     * @return the maximum number of cached version lists
+     */
+    public int getVersionCacheSize() {
+        return versionCacheSize;
+    }
+
+    /**
+     * Drops cached version lists, either of a single artifact or all of them if no coordinates are given.
+     */
+    @RequirePOST
+    public HttpResponse doInvalidateVersionCache(@QueryParameter String repoid, @QueryParameter String groupid,
+            @QueryParameter String artifactid) {
+        Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+        if (StringUtils.isBlank(repoid) || StringUtils.isBlank(groupid) || StringUtils.isBlank(artifactid)) {
+            VersionListCache.get().invalidateAll();
+        } else {
+            VersionListCache.get().invalidate(repoid, groupid, artifactid);
+        }
+        NegativeResultCache.get().invalidateAll();
+        return HttpResponses.ok();
+    }
+
     public Collection<RepositoryConfig> getRepos() {
         List<RepositoryConfig> r = new ArrayList<RepositoryConfig>();
         r.addAll(repos.values());
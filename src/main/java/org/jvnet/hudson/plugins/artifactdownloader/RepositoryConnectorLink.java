@@ -0,0 +1,111 @@
+package org.jvnet.hudson.plugins.artifactdownloader;
+
+import hudson.Extension;
+import hudson.model.ManagementLink;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+import jenkins.model.Jenkins;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+import org.jvnet.hudson.plugins.artifactdownloader.aether.Histogram;
+import org.jvnet.hudson.plugins.artifactdownloader.aether.LocalRepositoryEvictor;
+import org.jvnet.hudson.plugins.artifactdownloader.aether.TransferLimiter;
+import org.jvnet.hudson.plugins.artifactdownloader.aether.TransferMetrics;
+import org.kohsuke.stapler.StaplerResponse;
+
+/**
+ * Shows the usage of the shared local repository and the transfer metrics below Manage Jenkins.
+ */
+@Extension
+public class RepositoryConnectorLink extends ManagementLink {
+
+    @Override
+    public String getIconFileName() {
+        return "folder.png";
+    }
+
+    @Override
+    public String getUrlName() {
+        return "repository-connector";
+    }
+
+    @Override
+    public String getDisplayName() {
+        return Messages.RepositoryConnectorLink();
+    }
+
+    @Override
+    public String getDescription() {
+        return Messages.RepositoryConnectorLinkDescription();
+    }
+
+    public File getLocalRepository() {
+        return RepositoryConfiguration.get().getLocalRepoPath();
+    }
+
+    public LocalRepositoryEvictor getEvictor() {
+        return LocalRepositoryEvictor.get();
+    }
+
+    /**
+     * @return the hit rate of the local repository in percent
+     */
+    public long getHitRatePercent() {
+        return Math.round(getMetrics().getHitRate() * 100);
+    }
+
+    public TransferMetrics getMetrics() {
+        return TransferMetrics.get();
+    }
+
+    /**
+     * @return the number of transfers waiting for a slot of the repository
+     */
+    public int getQueueLength(String repoId) {
+        return TransferLimiter.get().getQueueLength(repoId);
+    }
+
+    /**
+     * Sends the transfer metrics as JSON, including the histogram buckets.
+     */
+    public void doMetrics(StaplerResponse rsp) throws IOException {
+        Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+        TransferMetrics metrics = getMetrics();
+        JSONObject repositories = new JSONObject();
+        for (Map.Entry<String, TransferMetrics.RepositoryMetrics> e : metrics.getRepositories().entrySet()) {
+            TransferMetrics.RepositoryMetrics m = e.getValue();
+            JSONObject repo = new JSONObject();
+            repo.put("fetches", m.getFetches());
+            repo.put("transfers", m.getTransfers());
+            repo.put("bytes", m.getBytes());
+            repo.put("notFound", m.getNotFound());
+            repo.put("failures", m.getFailures());
+            repo.put("corrupted", m.getCorrupted());
+            repo.put("timeToFirstByteMillis", toJSON(m.getTimeToFirstByte()));
+            repo.put("throughputKBs", toJSON(m.getThroughput()));
+            repo.put("queueWaitMillis", toJSON(m.getQueueWait()));
+            repo.put("queueLength", getQueueLength(e.getKey()));
+            repositories.put(e.getKey(), repo);
+        }
+        JSONObject result = new JSONObject();
+        result.put("hits", metrics.getHits());
+        result.put("fetches", metrics.getFetches());
+        result.put("repositories", repositories);
+        rsp.setContentType("application/json;charset=UTF-8");
+        rsp.getWriter().print(result.toString());
+    }
+
+    private static JSONObject toJSON(Histogram histogram) {
+        JSONObject out = new JSONObject();
+        out.put("count", histogram.getCount());
+        out.put("sum", histogram.getSum());
+        out.put("max", histogram.getMax());
+        out.put("bounds", JSONArray.fromObject(histogram.getBounds()));
+        out.put("counts", JSONArray.fromObject(histogram.getCounts()));
+        return out;
+    }
+}
@@ -0,0 +1,253 @@
+package org.jvnet.hudson.plugins.artifactdownloader;
+
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.IOUtils;
+import org.eclipse.aether.version.Version;
+import org.jvnet.hudson.plugins.artifactdownloader.aether.RepositoryConnector;
+import org.jvnet.hudson.plugins.artifactdownloader.aether.VersionFilter;
+
+/**
+ * Caches the versions available for an artifact, keyed by repository id, groupId:artifactId and
+ * the {@link VersionFilter} applied.
+ * Entries expire after a configurable time, an expired entry is still served while it is
+ * refreshed in the background. The number of entries is bounded, the least recently used
+ * entry is evicted first.
+ */
+public final class VersionListCache {
+
+    private static final Logger log = Logger.getLogger(VersionListCache.class.getName());
+
+    public static final int DEFAULT_TTL_SECONDS = 300;
+    public static final int DEFAULT_MAX_ENTRIES = 500;
+
+    private static final VersionListCache INSTANCE = new VersionListCache(new Loader() {
+        @Override
+        public List<String> load(RepositoryConfig repo, String groupId, String artifactId, VersionFilter filter) throws IOException {
+            return loadFromRepository(repo, groupId, artifactId, filter);
+        }
+    });
+
+    private final Loader loader;
+
+    private final ExecutorService refresher = Executors.newFixedThreadPool(2,
+            new NamingThreadFactory(new DaemonThreadFactory(), "VersionListCache.refresh"));
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > maxEntries;
+        }
+    };
+
+    private volatile long ttlMillis = TimeUnit.SECONDS.toMillis(DEFAULT_TTL_SECONDS);
+    private volatile int maxEntries = DEFAULT_MAX_ENTRIES;
+
+    VersionListCache(Loader loader) {
+        this.loader = loader;
+    }
+
+    public static VersionListCache get() {
+        return INSTANCE;
+    }
+
+    /**
+     * @param ttlSeconds seconds after which an entry is refreshed, <code>0</code> disables caching
+     * @param maxEntries maximum number of cached version lists
+     */
+    public void configure(int ttlSeconds, int maxEntries) {
+        this.ttlMillis = TimeUnit.SECONDS.toMillis(Math.max(0, ttlSeconds));
+        this.maxEntries = Math.max(1, maxEntries);
+        synchronized (entries) {
+            Iterator<String> it = entries.keySet().iterator();
+            while (entries.size() > this.maxEntries && it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns the versions of the given artifact, newest first. The list is loaded from the
+     * repository on the first call only, later calls are answered from the cache.
+     */
+    public List<String> getVersions(RepositoryConfig repo, String groupId, String artifactId) throws IOException {
+        return getVersions(repo, groupId, artifactId, VersionFilter.NONE);
+    }
+
+    /**
+     * Returns the versions of the given artifact accepted by the filter, newest first.
+     */
+    public List<String> getVersions(final RepositoryConfig repo, final String groupId, final String artifactId, final VersionFilter filter) throws IOException {
+        if (ttlMillis == 0) {
+            return loader.load(repo, groupId, artifactId, filter);
+        }
+        final String key = key(repo.getId(), groupId, artifactId) + filter;
+        final Entry entry;
+        boolean owner = false;
+        synchronized (entries) {
+            Entry e = entries.get(key);
+            if (e == null) {
+                e = new Entry(repo, groupId, artifactId, filter);
+                entries.put(key, e);
+                owner = true;
+            }
+            entry = e;
+        }
+        if (owner) {
+            entry.initial.run();
+        }
+        if (entry.versions == null) {
+            try {
+                entry.initial.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted while loading versions of " + groupId + ":" + artifactId, e);
+            } catch (ExecutionException e) {
+                remove(key, entry);
+                Throwable cause = e.getCause();
+                throw cause instanceof IOException ? (IOException) cause : new IOException(cause.getMessage(), cause);
+            }
+        } else if (isExpired(entry) && entry.refreshing.compareAndSet(false, true)) {
+            refresher.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        entry.update(loader.load(repo, groupId, artifactId, filter));
+                    } catch (Exception e) {
+                        log.log(Level.WARNING, "Could not refresh versions of " + groupId + ":" + artifactId, e);
+                    } finally {
+                        entry.refreshing.set(false);
+                    }
+                }
+            });
+        }
+        return entry.versions;
+    }
+
+    /**
+     * @return the cached versions, newest first, or <code>null</code> if they are not cached;
+     *         never contacts the repository
+     */
+    public List<String> peek(String repoId, String groupId, String artifactId, VersionFilter filter) {
+        synchronized (entries) {
+            Entry e = entries.get(key(repoId, groupId, artifactId) + filter);
+            return e == null ? null : e.versions;
+        }
+    }
+
+    /**
+     * Removes the cached versions of the given artifact, for all filters.
+     */
+    public void invalidate(String repoId, String groupId, String artifactId) {
+        String prefix = key(repoId, groupId, artifactId);
+        synchronized (entries) {
+            Iterator<String> it = entries.keySet().iterator();
+            while (it.hasNext()) {
+                if (it.next().startsWith(prefix)) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes all cached versions, e.g. after the repository configuration has changed.
+     */
+    public void invalidateAll() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private void remove(String key, Entry entry) {
+        synchronized (entries) {
+            if (entries.get(key) == entry) {
+                entries.remove(key);
+            }
+        }
+    }
+
+    private boolean isExpired(Entry entry) {
+        return System.currentTimeMillis() - entry.loaded > ttlMillis;
+    }
+
+    private static String key(String repoId, String groupId, String artifactId) {
+        return repoId + "|" + groupId + ":" + artifactId + "|";
+    }
+
+    private static List<String> loadFromRepository(RepositoryConfig repo, String groupId, String artifactId, VersionFilter filter) throws IOException {
+        RepositoryConnector rc = null;
+        try {
+            rc = new RepositoryConnector(System.out, Collections.singletonList(repo), RepositoryConfiguration.get().getLocalRepoPath());
+            List<Version> versions = rc.listFilteredVersions(groupId, artifactId, null, null, filter);
+            List<String> versionStrings = new ArrayList<String>(versions.size());
+            for (Version version : versions) {
+                versionStrings.add(version.toString());
+            }
+            return Collections.unmodifiableList(versionStrings);
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e.getMessage(), e);
+        } finally {
+            IOUtils.closeQuietly(rc);
+        }
+    }
+
+    /**
+     * Loads the versions of an artifact from its repository.
+     */
+    interface Loader {
+        List<String> load(RepositoryConfig repo, String groupId, String artifactId, VersionFilter filter) throws IOException;
+    }
+
+    private final class Entry {
+        private final FutureTask<List<String>> initial;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+        private volatile List<String> versions;
+        private volatile long loaded;
+
+        Entry(final RepositoryConfig repo, final String groupId, final String artifactId, final VersionFilter filter) {
+            initial = new FutureTask<List<String>>(new Callable<List<String>>() {
+                @Override
+                public List<String> call() throws Exception {
+                    List<String> loadedVersions = loader.load(repo, groupId, artifactId, filter);
+                    update(loadedVersions);
+                    return loadedVersions;
+                }
+            });
+        }
+
+        void update(List<String> versions) {
+            this.loaded = System.currentTimeMillis();
+            this.versions = versions;
+        }
+    }
+}
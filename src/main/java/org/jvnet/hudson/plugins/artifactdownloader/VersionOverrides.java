@@ -0,0 +1,117 @@
+package org.jvnet.hudson.plugins.artifactdownloader;
+
+import hudson.model.ParameterValue;
+import hudson.model.ParametersAction;
+import hudson.model.Run;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * The versions selected with {@link VersionParameterValue}s of a build, indexed by
+ * <code>groupId:artifactId</code>. The parameters are scanned once per build, all
+ * {@link ArtifactResolver} steps of the build look their artifacts up in the same index. The index
+ * is only kept in memory while the build is referenced, it is never saved with the build.
+ * If several parameters select the same artifact the last one wins.
+ */
+public class VersionOverrides {
+
+    private static final Map<Run<?, ?>, VersionOverrides> INDEX = new WeakHashMap<Run<?, ?>, VersionOverrides>();
+    private static final Object LOCK = new Object();
+
+    private final Map<String, ArtifactOverride> overrides = new HashMap<String, ArtifactOverride>();
+
+    private VersionOverrides(List<ParametersAction> parameterActions) {
+        for (ParametersAction parameterAction : parameterActions) {
+            for (ParameterValue parameterValue : parameterAction.getParameters()) {
+                if (parameterValue instanceof VersionParameterValue) {
+                    VersionParameterValue value = (VersionParameterValue) parameterValue;
+                    overrides.put(key(value.getGroupid(), value.getArtifactid()), new ArtifactOverride(value));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the index of the build, created on first access
+     */
+    public static VersionOverrides of(Run<?, ?> build) {
+        synchronized (LOCK) {
+            VersionOverrides index = INDEX.get(build);
+            if (index == null) {
+                index = new VersionOverrides(build.getActions(ParametersAction.class));
+                INDEX.put(build, index);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * @return an index of the given parameters, e.g. of a queued item, which is not attached anywhere
+     */
+    public static VersionOverrides of(List<ParametersAction> parameterActions) {
+        return new VersionOverrides(parameterActions);
+    }
+
+    /**
+     * @return the override of the artifact, <code>null</code> if no parameter selects a version of it
+     */
+    public ArtifactOverride get(String groupId, String artifactId) {
+        if (groupId == null || artifactId == null) {
+            return null;
+        }
+        return overrides.get(key(groupId, artifactId));
+    }
+
+    public int size() {
+        return overrides.size();
+    }
+
+    private static String key(String groupId, String artifactId) {
+        return groupId + ":" + artifactId;
+    }
+
+    /**
+     * The version, and optionally the classifier and extension, selected for an artifact.
+     */
+    public static final class ArtifactOverride {
+
+        private final String parameterName;
+        private final String version;
+        private final String classifier;
+        private final String extension;
+
+        ArtifactOverride(VersionParameterValue value) {
+            this.parameterName = value.getName();
+            this.version = value.value;
+            this.classifier = StringUtils.trimToNull(value.getClassifier());
+            this.extension = StringUtils.trimToNull(value.getExtension());
+        }
+
+        public String getParameterName() {
+            return parameterName;
+        }
+
+        public String getVersion() {
+            return version;
+        }
+
+        /**
+         * @return the classifier to resolve, <code>null</code> to keep the one of the build step
+         */
+        public String getClassifier() {
+            return classifier;
+        }
+
+        /**
+         * @return the extension to resolve, <code>null</code> to keep the one of the build step
+         */
+        public String getExtension() {
+            return extension;
+        }
+    }
+}
@@ -5,27 +5,45 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.regex.PatternSyntaxException;
 
 import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.io.IOUtils;
-import org.eclipse.aether.resolution.VersionRangeResolutionException;
-import org.eclipse.aether.version.Version;
 import org.jvnet.hudson.plugins.artifactdownloader.aether.RepositoryConnector;
+import org.jvnet.hudson.plugins.artifactdownloader.aether.VersionFilter;
 import org.jvnet.hudson.plugins.artifactdownloader.Messages;
+import org.kohsuke.stapler.AncestorInPath;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.Stapler;
 import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
 import org.kohsuke.stapler.export.Exported;
 
 import hudson.Extension;
+import hudson.Util;
+import hudson.model.Item;
+import hudson.model.Job;
+import hudson.model.ParameterDefinition;
 import hudson.model.ParameterValue;
+import hudson.model.ParametersDefinitionProperty;
 import hudson.model.SimpleParameterDefinition;
 import hudson.model.StringParameterValue;
 import hudson.util.FormValidation;
+import hudson.util.ListBoxModel;
 import net.sf.json.JSONArray;
 import net.sf.json.JSONException;
 import net.sf.json.JSONObject;
@@ -39,6 +57,14 @@ public class VersionParameterDefinition extends SimpleParameterDefinition {
     private final String artifactid;
     private final String propertyName;
 
+    private String versionRange;
+    private String includePattern;
+    private String excludePattern;
+    private VersionFilter.Kind versionKind;
+    private int maxVersions;
+    private String classifier;
+    private String extension;
+
     @DataBoundConstructor
     public VersionParameterDefinition(String repoid, String groupid, String artifactid, String propertyName, String description) {
         super(groupid + "." + artifactid, description);
@@ -51,7 +77,15 @@ public class VersionParameterDefinition extends SimpleParameterDefinition {
     @Override
     public VersionParameterDefinition copyWithDefaultValue(ParameterValue defaultValue) {
         if (defaultValue instanceof StringParameterValue) {
-            return new VersionParameterDefinition(getRepoid(), "", "", "", getDescription());
+            VersionParameterDefinition copy = new VersionParameterDefinition(getRepoid(), "", "", "", getDescription());
+            copy.setVersionRange(versionRange);
+            copy.setIncludePattern(includePattern);
+            copy.setExcludePattern(excludePattern);
+            copy.setVersionKind(versionKind);
+            copy.setMaxVersions(maxVersions);
+            copy.setClassifier(classifier);
+            copy.setExtension(extension);
+            return copy;
         } else {
             return this;
         }
@@ -61,10 +95,29 @@ public class VersionParameterDefinition extends SimpleParameterDefinition {
         return RepositoryConfiguration.get().getRepositoryMap().get(id);
     }
 
+    /**
+     * @return the versions which are already cached, never contacts the repository; the versions are
+     *         loaded asynchronously with {@link DescriptorImpl#doChoices}
+     */
     @Exported
     public List<String> getChoices() {
+        try {
+            List<String> cached = VersionListCache.get().peek(repoid, groupid, artifactid, getVersionFilter());
+            if (cached != null) {
+                return cached;
+            }
+        } catch (IllegalArgumentException ex) {
+            log.log(Level.FINE, "Invalid version filter of " + getName(), ex);
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Loads the versions from the repository unless they are cached. Blocks until the versions are
+     * available, so this must not be called while rendering a page.
+     */
+    public List<String> loadChoices() {
     	List<String> versionStrings = new ArrayList<String>();
-    	RepositoryConnector rc = null;
     	try {
 
         	RepositoryConfig rConf = getRepoById(repoid);
@@ -72,24 +125,29 @@ public class VersionParameterDefinition extends SimpleParameterDefinition {
         		throw new RuntimeException("invalid repo id: "+repoid);
         	}
     		
-    		rc = new RepositoryConnector(System.out, Collections.singletonList(rConf));
-            List<Version> versions = rc.listVersions(groupid, artifactid, null, null, null);
-            for (Version version : versions) {
-                versionStrings.add(version.toString());
-            }
+        	versionStrings.addAll(VersionListCache.get().getVersions(rConf, groupid, artifactid, getVersionFilter()));
         } catch (Exception ex) {
             log.log(Level.SEVERE, "Could not determine versions", ex);
             versionStrings.add("Could not determine versions ("+ex.getMessage()+")");
 
-        } finally {
-			IOUtils.closeQuietly(rc);
-		}
-    	if (!versionStrings.isEmpty()) {
-    		Collections.reverse(versionStrings);
-        } 
+        }
         return versionStrings;
     }
 
+    /**
+     * @return the url of {@link DescriptorImpl#doChoices} for this parameter, <code>null</code> if the
+     *         page is not rendered below a job
+     */
+    public String getChoicesUrl() {
+        StaplerRequest req = Stapler.getCurrentRequest();
+        Job<?, ?> job = req == null ? null : req.findAncestorObject(Job.class);
+        if (job == null) {
+            return null;
+        }
+        return req.getContextPath() + "/" + job.getUrl() + "descriptorByName/" + getDescriptor().getId()
+                + "/choices?name=" + Util.rawEncode(getName());
+    }
+
     @Exported
     public String getArtifactid() {
         return artifactid;
@@ -110,9 +168,99 @@ public class VersionParameterDefinition extends SimpleParameterDefinition {
         return propertyName;
     }
 
+    @Exported
+    public String getVersionRange() {
+        return versionRange;
+    }
+
+    @DataBoundSetter
+    public void setVersionRange(String versionRange) {
+        this.versionRange = Util.fixEmptyAndTrim(versionRange);
+    }
+
+    @Exported
+    public String getIncludePattern() {
+        return includePattern;
+    }
+
+    @DataBoundSetter
+    public void setIncludePattern(String includePattern) {
+        this.includePattern = Util.fixEmptyAndTrim(includePattern);
+    }
+
+    @Exported
+    public String getExcludePattern() {
+        return excludePattern;
+    }
+
+    @DataBoundSetter
+    public void setExcludePattern(String excludePattern) {
+        this.excludePattern = Util.fixEmptyAndTrim(excludePattern);
+    }
+
+    @Exported
+    public VersionFilter.Kind getVersionKind() {
+        return versionKind == null ? VersionFilter.Kind.ALL : versionKind;
+    }
+
+    @DataBoundSetter
+    public void setVersionKind(VersionFilter.Kind versionKind) {
+        this.versionKind = versionKind;
+    }
+
+    /**
+     * @return the maximum number of versions offered, <code>0</code> for all
+     */
+    @Exported
+    public int getMaxVersions() {
+        return maxVersions;
+    }
+
+    @DataBoundSetter
+    public void setMaxVersions(int maxVersions) {
+        this.maxVersions = Math.max(0, maxVersions);
+    }
+
+    /**
+     * @return the classifier the selected version is resolved with, <code>null</code> to keep the one of the build step
+     */
+    @Exported
+    public String getClassifier() {
+        return classifier;
+    }
+
+    @DataBoundSetter
+    public void setClassifier(String classifier) {
+        this.classifier = Util.fixEmptyAndTrim(classifier);
+    }
+
+    /**
+     * @return the extension the selected version is resolved with, <code>null</code> to keep the one of the build step
+     */
+    @Exported
+    public String getExtension() {
+        return extension;
+    }
+
+    @DataBoundSetter
+    public void setExtension(String extension) {
+        this.extension = Util.fixEmptyAndTrim(extension);
+    }
+
+    /**
+     * @return the filter restricting the offered versions
+     * @throws IllegalArgumentException if the range or a pattern is invalid
+     */
+    public VersionFilter getVersionFilter() {
+        return new VersionFilter(versionRange, includePattern, excludePattern, versionKind, maxVersions);
+    }
+
     @Override
     public ParameterValue createValue(StaplerRequest req, JSONObject jo) {
-        return new VersionParameterValue(groupid, artifactid, propertyName, jo.getString("value"));
+        VersionParameterValue value = new VersionParameterValue(groupid, artifactid, propertyName, jo.getString("value"));
+        value.setClassifier(classifier);
+        value.setExtension(extension);
+        return value;
     }
 
     @Override
@@ -131,6 +279,11 @@ public class VersionParameterDefinition extends SimpleParameterDefinition {
 
     public static class DescriptorImpl extends ParameterDescriptor {
 
+        private static final long PROBE_TTL_MILLIS = TimeUnit.SECONDS.toMillis(30);
+        private static final int MAX_PROBES = 1000;
+
+        private final transient ConcurrentMap<String, Probe> probes = new ConcurrentHashMap<String, Probe>();
+
         public DescriptorImpl() {
             super(VersionParameterDefinition.class);
             load();
@@ -162,6 +315,29 @@ public class VersionParameterDefinition extends SimpleParameterDefinition {
             return true;
         }
 
+        /**
+         * Sends the versions of the named parameter of the job as JSON (<code>{"choices":[...]}</code>),
+         * the build page fetches them asynchronously.
+         */
+        public void doChoices(@AncestorInPath Job<?, ?> job, @QueryParameter String name, StaplerResponse rsp)
+                throws IOException {
+            if (job == null) {
+                rsp.sendError(HttpServletResponse.SC_NOT_FOUND);
+                return;
+            }
+            job.checkPermission(Item.BUILD);
+            ParametersDefinitionProperty property = job.getProperty(ParametersDefinitionProperty.class);
+            ParameterDefinition definition = property == null ? null : property.getParameterDefinition(name);
+            if (!(definition instanceof VersionParameterDefinition)) {
+                rsp.sendError(HttpServletResponse.SC_NOT_FOUND);
+                return;
+            }
+            JSONObject result = new JSONObject();
+            result.put("choices", JSONArray.fromObject(((VersionParameterDefinition) definition).loadChoices()));
+            rsp.setContentType("application/json;charset=UTF-8");
+            rsp.getWriter().print(result.toString());
+        }
+
         public FormValidation doCheckGroupid(@QueryParameter String groupid,
                 @QueryParameter String artifactid,
                 @QueryParameter String repoid) throws IOException {
@@ -195,10 +371,11 @@ public class VersionParameterDefinition extends SimpleParameterDefinition {
                 String repoid) {
             FormValidation result = FormValidation.ok();
             try {
-            	RepositoryConfig r = DESCRIPTOR.getRepo(repoid);
-            	RepositoryConnector rc = new RepositoryConnector(System.out, Collections.singletonList(r));
-            	List<Version> versions = rc.listVersions(groupid, artifactid, null, null, null);
-                if (versions.isEmpty()) {
+                RepositoryConfig r = getRepo(repoid);
+                if (r == null) {
+                    throw new IOException("invalid repo id: " + repoid);
+                }
+                if (!probe(r, groupid, artifactid)) {
                     result = FormValidation.error(Messages.NoVersions() + " " + groupid + "." + artifactid);
                     log.log(Level.FINE, "No versions found for " + groupid + "." + artifactid);
                 }
@@ -209,6 +386,97 @@ public class VersionParameterDefinition extends SimpleParameterDefinition {
             return result;
         }
 
+        /**
+         * Checks whether the artifact exists. The answer is shared by the validations of all fields and
+         * kept for a short while, the form fires a validation on every change of a field.
+         */
+        private boolean probe(final RepositoryConfig r, final String groupid, final String artifactid) throws Exception {
+            String key = r.getId() + "|" + r.getUrl() + "|" + groupid + ":" + artifactid;
+            Probe probe = probes.get(key);
+            if (probe == null || probe.isExpired()) {
+                if (probes.size() >= MAX_PROBES) {
+                    purgeProbes();
+                }
+                Probe created = new Probe(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws Exception {
+                        RepositoryConnector rc = new RepositoryConnector(System.out, Collections.singletonList(r),
+                                RepositoryConfiguration.get().getLocalRepoPath());
+                        try {
+                            return rc.exists(groupid, artifactid);
+                        } finally {
+                            IOUtils.closeQuietly(rc);
+                        }
+                    }
+                });
+                boolean owner = probe == null ? probes.putIfAbsent(key, created) == null : probes.replace(key, probe, created);
+                if (owner) {
+                    created.run();
+                }
+                probe = probes.get(key);
+                if (probe == null) {
+                    probe = created;
+                }
+            }
+            try {
+                return probe.get();
+            } catch (ExecutionException e) {
+                // do not keep failures, the next validation asks again
+                probes.remove(key, probe);
+                Throwable cause = e.getCause();
+                throw cause instanceof Exception ? (Exception) cause : e;
+            }
+        }
+
+        private void purgeProbes() {
+            for (Iterator<Probe> it = probes.values().iterator(); it.hasNext();) {
+                if (it.next().isExpired()) {
+                    it.remove();
+                }
+            }
+            if (probes.size() >= MAX_PROBES) {
+                probes.clear();
+            }
+        }
+
+        public FormValidation doCheckVersionRange(@QueryParameter String versionRange) {
+            try {
+                new VersionFilter(versionRange, null, null, null, 0);
+                return FormValidation.ok();
+            } catch (IllegalArgumentException ex) {
+                return FormValidation.error(Messages.InvalidVersionRange() + " " + versionRange);
+            }
+        }
+
+        public FormValidation doCheckIncludePattern(@QueryParameter String includePattern) {
+            return checkPattern(includePattern);
+        }
+
+        public FormValidation doCheckExcludePattern(@QueryParameter String excludePattern) {
+            return checkPattern(excludePattern);
+        }
+
+        private FormValidation checkPattern(String pattern) {
+            try {
+                new VersionFilter(null, pattern, null, null, 0);
+                return FormValidation.ok();
+            } catch (PatternSyntaxException ex) {
+                return FormValidation.error(Messages.InvalidPattern() + " " + ex.getDescription());
+            }
+        }
+
+        public FormValidation doCheckMaxVersions(@QueryParameter String maxVersions) {
+            return Util.fixEmptyAndTrim(maxVersions) == null ? FormValidation.ok() : FormValidation.validateNonNegativeInteger(maxVersions);
+        }
+
+        public ListBoxModel doFillVersionKindItems() {
+            ListBoxModel items = new ListBoxModel();
+            for (VersionFilter.Kind kind : VersionFilter.Kind.values()) {
+                items.add(kind.name());
+            }
+            return items;
+        }
+
         public FormValidation doCheckRepoid(@QueryParameter String repoid)
                 throws IOException {
             FormValidation result = FormValidation.ok();
@@ -260,6 +528,21 @@ public class VersionParameterDefinition extends SimpleParameterDefinition {
         }
     }
 
+    /**
+     * An existence check of an artifact, run once and shared by everyone asking until it expires.
+     */
+    private static final class Probe extends FutureTask<Boolean> {
+        private final long created = System.currentTimeMillis();
+
+        Probe(Callable<Boolean> check) {
+            super(check);
+        }
+
+        boolean isExpired() {
+            return System.currentTimeMillis() - created > DescriptorImpl.PROBE_TTL_MILLIS;
+        }
+    }
+
     public String toString() {
         StringBuffer sb = new StringBuffer();
         sb.append(this.getClass().getSimpleName());
@@ -274,6 +557,8 @@ public class VersionParameterDefinition extends SimpleParameterDefinition {
         sb.append(repoid);
         sb.append(", artifactid=");
         sb.append(artifactid);
+        sb.append(", versionRange=");
+        sb.append(versionRange);
         sb.append(']');
         return sb.toString();
     }
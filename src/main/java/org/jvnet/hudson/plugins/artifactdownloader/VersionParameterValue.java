@@ -3,6 +3,7 @@ package org.jvnet.hudson.plugins.artifactdownloader;
 import hudson.model.StringParameterValue;
 
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 
 /**
  * This class sets the build parameter as environment value
@@ -17,6 +18,8 @@ public class VersionParameterValue extends StringParameterValue {
     private final String groupid;
     private final String artifactid;
     private final String propertyName;
+    private String classifier;
+    private String extension;
 
     public String getGroupid() {
         return groupid;
@@ -30,6 +33,30 @@ public class VersionParameterValue extends StringParameterValue {
         return propertyName;
     }
 
+    /**
+     * @return the classifier overriding the one of the build step, <code>null</code> to keep it
+     */
+    public String getClassifier() {
+        return classifier;
+    }
+
+    @DataBoundSetter
+    public void setClassifier(String classifier) {
+        this.classifier = classifier;
+    }
+
+    /**
+     * @return the extension overriding the one of the build step, <code>null</code> to keep it
+     */
+    public String getExtension() {
+        return extension;
+    }
+
+    @DataBoundSetter
+    public void setExtension(String extension) {
+        this.extension = extension;
+    }
+
     @DataBoundConstructor
     public VersionParameterValue(String groupid, String artifactid, String propertyName, String version) {
         super((propertyName != null && !propertyName.isEmpty()) ? propertyName : groupid + "." + artifactid, version);
@@ -50,6 +77,10 @@ public class VersionParameterValue extends StringParameterValue {
         sb.append(artifactid);
         sb.append(", propertyName=");
         sb.append(propertyName);
+        sb.append(", classifier=");
+        sb.append(classifier);
+        sb.append(", extension=");
+        sb.append(extension);
         sb.append(']');
         return sb.toString();
     }
@@ -0,0 +1,235 @@
+package org.jvnet.hudson.plugins.artifactdownloader.aether;
+
+import hudson.org.apache.tools.tar.TarInputStream;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.tools.ant.types.selectors.SelectorUtils;
+import org.apache.tools.tar.TarEntry;
+
+/**
+ * Extracts zip, tar and tar.gz artifacts into a directory, optionally restricted by Ant style
+ * include and exclude patterns. Jar, war and ear artifacts are zip files as well, but they are
+ * used as they are and never extracted. Zip archives are extracted from their central directory with
+ * several threads, tar archives are read as a stream in a single pass. Each entry is copied
+ * through a fixed buffer, memory use does not depend on the size of the archive.
+ */
+final class ArchiveExtractor {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final String[] includes;
+	private final String[] excludes;
+	private final int threads;
+	private final PrintStream logger;
+
+	/**
+	 * @param includes comma separated patterns of the entries to extract, <code>null</code> for all
+	 * @param excludes comma separated patterns of the entries to skip, <code>null</code> for none
+	 * @param threads the number of threads extracting the entries of a zip archive
+	 * @param logger receives the entries which are skipped
+	 */
+	ArchiveExtractor(String includes, String excludes, int threads, PrintStream logger) {
+		this.includes = StringUtils.isBlank(includes) ? new String[] { "**" } : StringUtils.split(includes, ", ");
+		this.excludes = StringUtils.isBlank(excludes) ? new String[0] : StringUtils.split(excludes, ", ");
+		this.threads = Math.max(1, threads);
+		this.logger = logger;
+	}
+
+	/**
+	 * @return <code>true</code> if archives with the given extension can be extracted
+	 */
+	static boolean isSupported(String extension) {
+		return isZip(extension) || isTar(extension);
+	}
+
+	private static boolean isZip(String extension) {
+		return "zip".equals(extension);
+	}
+
+	private static boolean isTar(String extension) {
+		return "tar".equals(extension) || "tar.gz".equals(extension) || "tgz".equals(extension);
+	}
+
+	/**
+	 * Extracts the archive into the given directory.
+	 *
+	 * @param extension the extension of the artifact, which determines the format
+	 * @return the number of bytes extracted
+	 */
+	long extract(File archive, String extension, File directory) throws IOException {
+		if(!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("unable to create directory "+directory.getAbsolutePath());
+		}
+		if(isZip(extension)) {
+			return extractZip(archive, directory);
+		}
+		if(isTar(extension)) {
+			InputStream in = new BufferedInputStream(new FileInputStream(archive), BUFFER_SIZE);
+			try {
+				if(!"tar".equals(extension)) {
+					// closing the gzip stream releases its native inflater, it closes the file as well
+					in = new GZIPInputStream(in, BUFFER_SIZE);
+				}
+				return extractTar(in, directory);
+			} finally {
+				in.close();
+			}
+		}
+		throw new IOException("unable to unpack "+archive.getName()+", unsupported archive type: "+extension);
+	}
+
+	private long extractZip(File archive, final File directory) throws IOException {
+		final ZipFile zip = new ZipFile(archive);
+		try {
+			List<ZipEntry> files = new ArrayList<ZipEntry>();
+			for(Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements();) {
+				ZipEntry entry = e.nextElement();
+				if(entry.isDirectory() || !isSelected(entry.getName())) {
+					continue;
+				}
+				files.add(entry);
+			}
+			int poolSize = Math.min(threads, files.size());
+			if(poolSize <= 1) {
+				long bytes = 0;
+				for(ZipEntry entry : files) {
+					bytes += extractZipEntry(zip, entry, directory);
+				}
+				return bytes;
+			}
+			ExecutorService executor = Executors.newFixedThreadPool(poolSize, new NamingThreadFactory(new DaemonThreadFactory(), "ArchiveExtractor.unzip"));
+			try {
+				List<Future<Long>> futures = new ArrayList<Future<Long>>(files.size());
+				for(final ZipEntry entry : files) {
+					futures.add(executor.submit(new Callable<Long>() {
+						@Override
+						public Long call() throws IOException {
+							return extractZipEntry(zip, entry, directory);
+						}
+					}));
+				}
+				long bytes = 0;
+				for(Future<Long> future : futures) {
+					try {
+						bytes += future.get();
+					} catch (InterruptedException e) {
+						throw new InterruptedIOException("interrupted while unpacking "+archive.getName());
+					} catch (ExecutionException e) {
+						Throwable cause = e.getCause();
+						throw cause instanceof IOException ? (IOException) cause : new IOException(cause.getMessage(), cause);
+					}
+				}
+				return bytes;
+			} finally {
+				executor.shutdownNow();
+			}
+		} finally {
+			zip.close();
+		}
+	}
+
+	private static long extractZipEntry(ZipFile zip, ZipEntry entry, File directory) throws IOException {
+		InputStream in = zip.getInputStream(entry);
+		try {
+			return write(in, resolve(directory, entry.getName()), false);
+		} finally {
+			in.close();
+		}
+	}
+
+	private long extractTar(InputStream stream, File directory) throws IOException {
+		TarInputStream tar = new TarInputStream(stream);
+		long bytes = 0;
+		TarEntry entry;
+		while((entry = tar.getNextEntry()) != null) {
+			if(entry.isDirectory() || !isSelected(entry.getName())) {
+				continue;
+			}
+			if(entry.isSymbolicLink() || entry.isLink()) {
+				// a link could point anywhere, its target is not extracted in its place either
+				logger.println("skipping link "+entry.getName()+" -> "+entry.getLinkName());
+				continue;
+			}
+			// the stream ends with the entry, it is not closed here
+			bytes += write(tar, resolve(directory, entry.getName()), (entry.getMode() & 0100) != 0);
+		}
+		return bytes;
+	}
+
+	private boolean isSelected(String name) {
+		boolean included = false;
+		for(String pattern : includes) {
+			if(SelectorUtils.matchPath(pattern, name)) {
+				included = true;
+				break;
+			}
+		}
+		if(!included) {
+			return false;
+		}
+		for(String pattern : excludes) {
+			if(SelectorUtils.matchPath(pattern, name)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the file of the entry, which must not leave the directory
+	 */
+	private static File resolve(File directory, String name) throws IOException {
+		File file = new File(directory, name);
+		String root = directory.getCanonicalPath() + File.separator;
+		if(!file.getCanonicalPath().startsWith(root)) {
+			throw new IOException("archive entry "+name+" points outside of "+directory.getAbsolutePath());
+		}
+		return file;
+	}
+
+	private static long write(InputStream in, File file, boolean executable) throws IOException {
+		File parent = file.getParentFile();
+		if(!parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+			throw new IOException("unable to create directory "+parent.getAbsolutePath());
+		}
+		OutputStream out = new FileOutputStream(file);
+		long bytes = 0;
+		try {
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int read;
+			while((read = in.read(buffer)) >= 0) {
+				out.write(buffer, 0, read);
+				bytes += read;
+			}
+		} finally {
+			out.close();
+		}
+		if(executable) {
+			file.setExecutable(true);
+		}
+		return bytes;
+	}
+}
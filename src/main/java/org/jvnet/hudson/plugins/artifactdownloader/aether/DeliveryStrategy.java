@@ -0,0 +1,161 @@
+package org.jvnet.hudson.plugins.artifactdownloader.aether;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Describes how a resolved file is delivered from the local repository to its target location.
+ * The strategies are ordered from cheapest to most expensive, if a strategy can not be applied
+ * the next one is tried, so {@link #STREAM} is only used as the last resort.
+ */
+public enum DeliveryStrategy {
+
+	/**
+	 * Creates a hard link to the file in the local repository if both are on the same file store.
+	 * No data is copied at all, but the target must not be modified in place since it shares its
+	 * content with the local repository.
+	 */
+	HARD_LINK {
+		@Override
+		boolean deliver(Path source, Path target) throws IOException {
+			Path parent = target.toAbsolutePath().getParent();
+			if(parent == null || !Files.getFileStore(source).equals(Files.getFileStore(parent))) {
+				return false;
+			}
+			try {
+				if(!unlink(source, target)) {
+					return true;
+				}
+				Files.createLink(target, source);
+				return true;
+			} catch (UnsupportedOperationException e) {
+				return false;
+			} catch (FileSystemException e) {
+				return false;
+			}
+		}
+	},
+
+	/**
+	 * Copies the file with {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)},
+	 * which lets the operating system move the data without passing it through the JVM.
+	 */
+	TRANSFER {
+		@Override
+		boolean deliver(Path source, Path target) throws IOException {
+			if(!unlink(source, target)) {
+				return true;
+			}
+			FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+			try {
+				FileChannel out = FileChannel.open(target, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+				try {
+					long size = in.size();
+					long position = 0;
+					while(position < size) {
+						long transferred = in.transferTo(position, size - position, out);
+						if(transferred <= 0) {
+							// no progress, let the next strategy copy the file instead of spinning here
+							return false;
+						}
+						position += transferred;
+					}
+				} finally {
+					out.close();
+				}
+			} finally {
+				in.close();
+			}
+			return true;
+		}
+	},
+
+	/**
+	 * Copies the file with {@link Files#copy(Path, Path, java.nio.file.CopyOption...)}.
+	 */
+	NIO_COPY {
+		@Override
+		boolean deliver(Path source, Path target) throws IOException {
+			Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+			return true;
+		}
+	},
+
+	/**
+	 * Copies the file through a stream pair on the heap.
+	 */
+	STREAM {
+		@Override
+		boolean deliver(Path source, Path target) throws IOException {
+			if(!unlink(source, target)) {
+				return true;
+			}
+			InputStream in = new FileInputStream(source.toFile());
+			try {
+				OutputStream out = new FileOutputStream(target.toFile());
+				try {
+					IOUtils.copyLarge(in, out);
+				} finally {
+					out.close();
+				}
+			} finally {
+				in.close();
+			}
+			return true;
+		}
+	};
+
+	public static final DeliveryStrategy DEFAULT = TRANSFER;
+
+	/**
+	 * Removes an existing target before it is written in place. A target hard linked to the source
+	 * by an earlier delivery shares its content, truncating it would truncate the cached artifact.
+	 *
+	 * @return <code>false</code> if the target is the source itself, directly or through a symbolic
+	 *         link, and there is nothing to deliver
+	 */
+	private static boolean unlink(Path source, Path target) throws IOException {
+		if(Files.exists(target) && source.toRealPath().equals(target.toRealPath())) {
+			return false;
+		}
+		Files.deleteIfExists(target);
+		return true;
+	}
+
+	/**
+	 * @return <code>true</code> if the file was delivered, <code>false</code> if this strategy can not be applied
+	 */
+	abstract boolean deliver(Path source, Path target) throws IOException;
+
+	/**
+	 * Delivers the source file to the target, starting with this strategy and falling back to the
+	 * following ones if it can not be applied or fails.
+	 *
+	 * @return the strategy which delivered the file
+	 */
+	public DeliveryStrategy deliverWithFallback(Path source, Path target) throws IOException {
+		IOException failure = null;
+		DeliveryStrategy[] strategies = values();
+		for(int i = ordinal(); i < strategies.length; i++) {
+			try {
+				if(strategies[i].deliver(source, target)) {
+					return strategies[i];
+				}
+			} catch (IOException e) {
+				failure = e;
+			}
+		}
+		throw failure != null ? failure : new IOException("unable to deliver "+source+" to "+target);
+	}
+}
@@ -0,0 +1,281 @@
+package org.jvnet.hudson.plugins.artifactdownloader.aether;
+
+import hudson.Util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang.StringUtils;
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.resolution.ArtifactRequest;
+import org.eclipse.aether.resolution.ArtifactResult;
+import org.eclipse.aether.resolution.VersionRequest;
+import org.eclipse.aether.resolution.VersionResolutionException;
+import org.eclipse.aether.spi.connector.layout.RepositoryLayout;
+import org.eclipse.aether.spi.connector.layout.RepositoryLayoutProvider;
+import org.eclipse.aether.spi.connector.transport.GetTask;
+import org.eclipse.aether.spi.connector.transport.TransportListener;
+import org.eclipse.aether.spi.connector.transport.Transporter;
+import org.eclipse.aether.spi.connector.transport.TransporterProvider;
+import org.eclipse.aether.transfer.ArtifactNotFoundException;
+import org.eclipse.aether.transfer.ArtifactTransferException;
+import org.eclipse.aether.transfer.ChecksumFailureException;
+import org.eclipse.aether.transfer.NoRepositoryLayoutException;
+import org.eclipse.aether.transfer.NoTransporterException;
+import org.eclipse.aether.transfer.TransferCancelledException;
+import org.eclipse.aether.transfer.TransferEvent;
+import org.eclipse.aether.transfer.TransferListener;
+import org.eclipse.aether.transfer.TransferResource;
+import org.jvnet.hudson.plugins.artifactdownloader.ArtifactConfig;
+import org.jvnet.hudson.plugins.artifactdownloader.RepositoryConfig;
+
+/**
+ * Streams an artifact from the remote repository straight into its target file, bypassing the
+ * local repository. The checksums published next to the artifact are verified against digests
+ * computed while the data arrives, the target is written to a temporary file in its directory
+ * and moved into place only after the checksums matched.
+ */
+final class DirectDownload {
+
+	private final RepositorySystem system;
+	private final RepositorySystemSession session;
+	private final List<RemoteRepository> remotes;
+	private final TransporterProvider transporterProvider;
+	private final RepositoryLayoutProvider layoutProvider;
+	private final PrintStream logger;
+
+	DirectDownload(RepositorySystemHolder holder, RepositorySystemSession session, List<RemoteRepository> remotes, PrintStream logger) {
+		this.system = holder.getSystem();
+		this.session = session;
+		this.remotes = remotes;
+		this.transporterProvider = holder.getService(TransporterProvider.class);
+		this.layoutProvider = holder.getService(RepositoryLayoutProvider.class);
+		this.logger = logger;
+	}
+
+	/**
+	 * Downloads the artifact into its target file, asking the repositories in order. Broken
+	 * transfers are retried as configured for the repository, a missing artifact is looked up in the
+	 * next repository.
+	 *
+	 * @return the result, resolved if the target was written
+	 */
+	ArtifactResult download(ArtifactConfig ac, RepositoryConnector connector) throws InterruptedIOException {
+		Artifact artifact = new DefaultArtifact(ac.getGroupId(),ac.getArtifactId(),ac.getClassifier(),ac.getExtension(),ac.getVersion());
+		ArtifactResult result = new ArtifactResult(new ArtifactRequest(artifact, remotes, null));
+		try {
+			artifact = resolveVersion(artifact);
+		} catch (VersionResolutionException e) {
+			result.addException(e);
+			return result;
+		}
+		File target = new File(ac.getTargetFileName());
+		for(RemoteRepository repository : remotes) {
+			RepositoryConfig conf = connector.getRepositoryConfig(repository.getId());
+			int retries = conf == null ? 0 : conf.getRetries();
+			for(int attempt = 0; ; attempt++) {
+				try {
+					long size = download(artifact, repository, target);
+					logger.println("streamed artifact: "+artifact+" -> "+target.getAbsolutePath()+" ("+size+" bytes)");
+					result.setArtifact(artifact.setFile(target));
+					result.setRepository(repository);
+					return result;
+				} catch (ArtifactNotFoundException e) {
+					result.addException(e);
+					break;
+				} catch (ArtifactTransferException e) {
+					if(attempt >= retries) {
+						result.addException(e);
+						break;
+					}
+					long backoff = Math.min(RepositoryConnector.MAX_RETRY_BACKOFF, (long) conf.getRetryBackoff() << Math.min(attempt, 20));
+					logger.println("streaming "+artifact+" from "+repository.getId()+" failed ("+e.getMessage()+"), retry "+(attempt + 1)+" in "+backoff+" ms");
+					try {
+						Thread.sleep(backoff);
+					} catch (InterruptedException ie) {
+						throw new InterruptedIOException("interrupted while streaming "+artifact);
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Snapshots and the RELEASE/LATEST meta versions are resolved with the repository metadata, the
+	 * repository layout needs the concrete version.
+	 */
+	private Artifact resolveVersion(Artifact artifact) throws VersionResolutionException {
+		String version = artifact.getVersion();
+		if(!artifact.isSnapshot() && !"RELEASE".equals(version) && !"LATEST".equals(version)) {
+			return artifact;
+		}
+		return artifact.setVersion(system.resolveVersion(session, new VersionRequest(artifact, remotes, null)).getVersion());
+	}
+
+	private long download(Artifact artifact, RemoteRepository repository, File target) throws ArtifactTransferException {
+		RepositoryLayout layout;
+		Transporter transporter;
+		try {
+			layout = layoutProvider.newRepositoryLayout(session, repository);
+			transporter = transporterProvider.newTransporter(session, repository);
+		} catch (NoRepositoryLayoutException e) {
+			throw new ArtifactTransferException(artifact, repository, e);
+		} catch (NoTransporterException e) {
+			throw new ArtifactTransferException(artifact, repository, e);
+		}
+		File tmp = null;
+		try {
+			URI location = layout.getLocation(artifact, false);
+			List<RepositoryLayout.ChecksumLocation> checksums = layout.getChecksums(artifact, false, location);
+			File parent = target.getAbsoluteFile().getParentFile();
+			if(!parent.isDirectory() && !parent.mkdirs()) {
+				throw new IOException("unable to create directory "+parent.getAbsolutePath());
+			}
+			tmp = File.createTempFile(target.getName()+".", ".part", parent);
+
+			Map<String, MessageDigest> digests = new LinkedHashMap<String, MessageDigest>();
+			for(RepositoryLayout.ChecksumLocation checksum : checksums) {
+				try {
+					digests.put(checksum.getAlgorithm(), MessageDigest.getInstance(checksum.getAlgorithm()));
+				} catch (NoSuchAlgorithmException e) {
+					// not verifiable here, the other checksums still are
+				}
+			}
+
+			TransferResource resource = new TransferResource(repository.getUrl(), location.toString(), tmp, null);
+			TransferEvent.Builder event = new TransferEvent.Builder(session, resource).setRequestType(TransferEvent.RequestType.GET);
+			TransferListener listener = session.getTransferListener();
+			listener.transferInitiated(event.resetType(TransferEvent.EventType.INITIATED).build());
+			try {
+				GetTask task = new GetTask(location).setDataFile(tmp).setListener(new DigestingListener(listener, event, resource, digests));
+				transporter.get(task);
+				verify(transporter, artifact, repository, checksums, digests);
+			} catch (Exception e) {
+				ArtifactTransferException failure = toTransferException(transporter, artifact, repository, e);
+				listener.transferFailed(event.resetType(TransferEvent.EventType.FAILED).setException(failure).build());
+				throw failure;
+			}
+			listener.transferSucceeded(event.resetType(TransferEvent.EventType.SUCCEEDED).build());
+
+			move(tmp, target);
+			tmp = null;
+			return target.length();
+		} catch (ArtifactTransferException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new ArtifactTransferException(artifact, repository, e);
+		} finally {
+			transporter.close();
+			if(tmp != null && !tmp.delete() && tmp.exists()) {
+				logger.println("unable to delete "+tmp.getAbsolutePath());
+			}
+		}
+	}
+
+	/**
+	 * Compares the digests computed during the transfer with the published checksums. Missing
+	 * checksum files are tolerated, a mismatch fails the transfer.
+	 */
+	private void verify(Transporter transporter, Artifact artifact, RemoteRepository repository,
+			List<RepositoryLayout.ChecksumLocation> checksums, Map<String, MessageDigest> digests) throws Exception {
+		for(RepositoryLayout.ChecksumLocation checksum : checksums) {
+			MessageDigest digest = digests.get(checksum.getAlgorithm());
+			if(digest == null) {
+				continue;
+			}
+			GetTask task = new GetTask(checksum.getLocation());
+			try {
+				transporter.get(task);
+			} catch (Exception e) {
+				if(transporter.classify(e) == Transporter.ERROR_NOT_FOUND) {
+					continue;
+				}
+				throw e;
+			}
+			String published = StringUtils.trimToEmpty(task.getDataString()).split("\\s+")[0];
+			String actual = Util.toHexString(digest.digest());
+			if(!published.equalsIgnoreCase(actual)) {
+				throw new ChecksumFailureException(published, actual);
+			}
+			// the strongest published checksum is enough
+			return;
+		}
+		logger.println("no checksum published for "+artifact+" in "+repository.getId()+", not verified");
+	}
+
+	private static ArtifactTransferException toTransferException(Transporter transporter, Artifact artifact, RemoteRepository repository, Exception e) {
+		if(e instanceof ArtifactTransferException) {
+			return (ArtifactTransferException) e;
+		}
+		if(transporter.classify(e) == Transporter.ERROR_NOT_FOUND) {
+			return new ArtifactNotFoundException(artifact, repository);
+		}
+		return new ArtifactTransferException(artifact, repository, e);
+	}
+
+	/**
+	 * Replaces the target with the completely written temporary file, atomically where the file
+	 * system allows it.
+	 */
+	private static void move(File tmp, File target) throws IOException {
+		try {
+			Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Updates the digests with the data passing by and reports the progress to the session's
+	 * transfer listener, which also throttles and accounts the transfer.
+	 */
+	private static final class DigestingListener extends TransportListener {
+		private final TransferListener listener;
+		private final TransferEvent.Builder event;
+		private final TransferResource resource;
+		private final Map<String, MessageDigest> digests;
+
+		DigestingListener(TransferListener listener, TransferEvent.Builder event, TransferResource resource, Map<String, MessageDigest> digests) {
+			this.listener = listener;
+			this.event = event;
+			this.resource = resource;
+			this.digests = digests;
+		}
+
+		@Override
+		public void transportStarted(long dataOffset, long dataLength) throws TransferCancelledException {
+			// a restarted transfer starts over, so do the digests
+			for(MessageDigest digest : digests.values()) {
+				digest.reset();
+			}
+			resource.setContentLength(dataLength);
+			listener.transferStarted(event.resetType(TransferEvent.EventType.STARTED).setTransferredBytes(dataOffset).build());
+		}
+
+		@Override
+		public void transportProgressed(ByteBuffer data) throws TransferCancelledException {
+			for(MessageDigest digest : digests.values()) {
+				digest.update(data.duplicate());
+			}
+			event.resetType(TransferEvent.EventType.PROGRESSED).addTransferredBytes(data.remaining()).setDataBuffer(data);
+			listener.transferProgressed(event.build());
+		}
+	}
+}
@@ -0,0 +1,98 @@
+package org.jvnet.hudson.plugins.artifactdownloader.aether;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.lang.StringUtils;
+import org.eclipse.aether.transfer.AbstractTransferListener;
+import org.eclipse.aether.transfer.ArtifactNotFoundException;
+import org.eclipse.aether.transfer.MetadataNotFoundException;
+import org.eclipse.aether.transfer.TransferEvent;
+import org.eclipse.aether.transfer.TransferResource;
+import org.jvnet.hudson.plugins.artifactdownloader.RepositoryConfig;
+
+/**
+ * Feeds the response times and failures of transfers into {@link RepositoryHealth}. A missing
+ * resource is a regular answer of the repository and counts as a response, not as a failure.
+ */
+final class HealthTransferListener extends AbstractTransferListener {
+
+	private final Map<String, String> repoIds;
+	private final ConcurrentMap<TransferResource, Long> initiated = new ConcurrentHashMap<TransferResource, Long>();
+
+	HealthTransferListener(List<RepositoryConfig> repositoryConfigs) {
+		this.repoIds = repoIds(repositoryConfigs);
+	}
+
+	/**
+	 * @return the repository ids by normalized repository url
+	 */
+	static Map<String, String> repoIds(List<RepositoryConfig> repositoryConfigs) {
+		Map<String, String> repoIds = new HashMap<String, String>();
+		for(RepositoryConfig conf : repositoryConfigs) {
+			repoIds.put(normalize(conf.getUrl()), conf.getId());
+		}
+		return repoIds;
+	}
+
+	/**
+	 * @return the id of the repository the transfer is talking to, <code>null</code> if unknown
+	 */
+	static String getRepoId(Map<String, String> repoIds, TransferEvent event) {
+		return repoIds.get(normalize(event.getResource().getRepositoryUrl()));
+	}
+
+	/**
+	 * @return <code>true</code> if the transfer failed because the resource does not exist
+	 */
+	static boolean isNotFound(TransferEvent event) {
+		Exception e = event.getException();
+		return e instanceof ArtifactNotFoundException || e instanceof MetadataNotFoundException;
+	}
+
+	@Override
+	public void transferInitiated(TransferEvent event) {
+		initiated.put(event.getResource(), System.currentTimeMillis());
+	}
+
+	@Override
+	public void transferStarted(TransferEvent event) {
+		Long start = initiated.remove(event.getResource());
+		String repoId = getRepoId(event);
+		if(start != null && repoId != null) {
+			RepositoryHealth.get().recordResponse(repoId, System.currentTimeMillis() - start);
+		}
+	}
+
+	@Override
+	public void transferSucceeded(TransferEvent event) {
+		initiated.remove(event.getResource());
+	}
+
+	@Override
+	public void transferFailed(TransferEvent event) {
+		Long start = initiated.remove(event.getResource());
+		String repoId = getRepoId(event);
+		if(repoId == null) {
+			return;
+		}
+		if(isNotFound(event)) {
+			if(start != null) {
+				RepositoryHealth.get().recordResponse(repoId, System.currentTimeMillis() - start);
+			}
+		} else {
+			RepositoryHealth.get().recordFailure(repoId);
+		}
+	}
+
+	private String getRepoId(TransferEvent event) {
+		return getRepoId(repoIds, event);
+	}
+
+	private static String normalize(String url) {
+		return StringUtils.stripEnd(StringUtils.defaultString(url), "/");
+	}
+}
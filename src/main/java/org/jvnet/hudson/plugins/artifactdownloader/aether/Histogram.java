@@ -0,0 +1,90 @@
+package org.jvnet.hudson.plugins.artifactdownloader.aether;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts samples in fixed buckets, each bucket counts the samples up to its bound; the last
+ * bucket counts everything above the highest bound.
+ */
+public final class Histogram {
+
+	private final long[] bounds;
+	private final AtomicLongArray counts;
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * @param bounds the ascending upper bounds of the buckets
+	 */
+	public Histogram(long... bounds) {
+		this.bounds = bounds.clone();
+		this.counts = new AtomicLongArray(bounds.length + 1);
+	}
+
+	public void record(long value) {
+		int i = 0;
+		while (i < bounds.length && value > bounds[i]) {
+			i++;
+		}
+		counts.incrementAndGet(i);
+		count.incrementAndGet();
+		sum.addAndGet(value);
+		long m = max.get();
+		while (value > m && !max.compareAndSet(m, value)) {
+			m = max.get();
+		}
+	}
+
+	public long[] getBounds() {
+		return bounds.clone();
+	}
+
+	/**
+	 * @return the samples per bucket, one more than there are bounds
+	 */
+	public long[] getCounts() {
+		long[] out = new long[counts.length()];
+		for (int i = 0; i < out.length; i++) {
+			out[i] = counts.get(i);
+		}
+		return out;
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	public long getSum() {
+		return sum.get();
+	}
+
+	public long getMax() {
+		return max.get();
+	}
+
+	public long getMean() {
+		long c = count.get();
+		return c == 0 ? 0 : sum.get() / c;
+	}
+
+	/**
+	 * @return the bound of the bucket containing the given percentile, the maximum for the last bucket
+	 */
+	public long getPercentile(int percentile) {
+		long c = count.get();
+		if (c == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(c * percentile / 100.0);
+		long seen = 0;
+		for (int i = 0; i < bounds.length; i++) {
+			seen += counts.get(i);
+			if (seen >= rank) {
+				return bounds[i];
+			}
+		}
+		return max.get();
+	}
+}
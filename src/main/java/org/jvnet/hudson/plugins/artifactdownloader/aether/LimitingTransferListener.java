@@ -0,0 +1,95 @@
+package org.jvnet.hudson.plugins.artifactdownloader.aether;
+
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.eclipse.aether.transfer.AbstractTransferListener;
+import org.eclipse.aether.transfer.TransferCancelledException;
+import org.eclipse.aether.transfer.TransferEvent;
+import org.eclipse.aether.transfer.TransferResource;
+import org.jvnet.hudson.plugins.artifactdownloader.RepositoryConfig;
+
+/**
+ * Sends the transfers of a session through the {@link TransferLimiter}: a transfer waits for a
+ * slot of its repository when it is initiated and is throttled while data arrives. The transfer
+ * threads block in the callbacks, which is what queues them.
+ */
+final class LimitingTransferListener extends AbstractTransferListener {
+
+	/** waits shorter than this are not worth a line in the build log */
+	private static final long LOG_THRESHOLD_MILLIS = 100;
+
+	private final Map<String, String> repoIds;
+	private final Map<String, RepositoryConfig> configs = new HashMap<String, RepositoryConfig>();
+	private final ConcurrentMap<TransferResource, TransferLimiter.Limit> acquired = new ConcurrentHashMap<TransferResource, TransferLimiter.Limit>();
+	private final PrintStream logger;
+	private final MetricsTransferListener metrics;
+
+	LimitingTransferListener(List<RepositoryConfig> repositoryConfigs, PrintStream logger, MetricsTransferListener metrics) {
+		this.repoIds = HealthTransferListener.repoIds(repositoryConfigs);
+		for(RepositoryConfig conf : repositoryConfigs) {
+			configs.put(conf.getId(), conf);
+		}
+		this.logger = logger;
+		this.metrics = metrics;
+	}
+
+	@Override
+	public void transferInitiated(TransferEvent event) throws TransferCancelledException {
+		String repoId = HealthTransferListener.getRepoId(repoIds, event);
+		if(repoId == null) {
+			return;
+		}
+		TransferLimiter.Limit limit = TransferLimiter.get().getLimit(configs.get(repoId));
+		long waited;
+		try {
+			waited = limit.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new TransferCancelledException("interrupted while waiting for a transfer slot of "+repoId);
+		}
+		acquired.put(event.getResource(), limit);
+		metrics.recordQueueWait(repoId, waited);
+		if(waited >= LOG_THRESHOLD_MILLIS) {
+			logger.println("waited "+waited+" ms for a transfer slot of repository "+repoId);
+		}
+	}
+
+	@Override
+	public void transferProgressed(TransferEvent event) throws TransferCancelledException {
+		TransferLimiter.Limit limit = acquired.get(event.getResource());
+		if(limit == null || event.getDataBuffer() == null) {
+			return;
+		}
+		try {
+			long slept = limit.throttle(event.getDataBuffer().remaining());
+			if(slept > 0) {
+				metrics.recordThrottle(slept);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new TransferCancelledException("interrupted while throttling "+event.getResource().getResourceName());
+		}
+	}
+
+	@Override
+	public void transferSucceeded(TransferEvent event) {
+		release(event);
+	}
+
+	@Override
+	public void transferFailed(TransferEvent event) {
+		release(event);
+	}
+
+	private void release(TransferEvent event) {
+		TransferLimiter.Limit limit = acquired.remove(event.getResource());
+		if(limit != null) {
+			limit.release();
+		}
+	}
+}
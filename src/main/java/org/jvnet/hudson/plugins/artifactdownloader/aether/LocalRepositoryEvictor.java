@@ -0,0 +1,224 @@
+package org.jvnet.hudson.plugins.artifactdownloader.aether;
+
+import hudson.Util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps a shared local repository below a size quota by deleting the least recently used
+ * version directories (<code>group/artifact/version</code>). The last access of a version
+ * directory is its modification time, it is updated whenever an artifact is served from it, so
+ * the order survives restarts. Directories of artifacts which are being resolved are pinned and
+ * never evicted, a resolution waits for an eviction of its directory which is already running.
+ */
+public final class LocalRepositoryEvictor {
+
+	private static final Logger log = Logger.getLogger(LocalRepositoryEvictor.class.getName());
+
+	private static final LocalRepositoryEvictor INSTANCE = new LocalRepositoryEvictor();
+
+	private final Map<File, Integer> pinned = new HashMap<File, Integer>();
+	private final Set<File> evicting = new HashSet<File>();
+
+	private final AtomicLong evictions = new AtomicLong();
+	private final AtomicLong evictedBytes = new AtomicLong();
+
+	private volatile long occupiedBytes = -1;
+	private volatile long quotaBytes;
+	private volatile long lastRun;
+
+	private LocalRepositoryEvictor() {
+	}
+
+	public static LocalRepositoryEvictor get() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Protects a version directory from eviction until {@link #unpin(File)} is called. Waits if the
+	 * directory is being evicted right now.
+	 */
+	public void pin(File versionDir) throws InterruptedException {
+		File key = versionDir.getAbsoluteFile();
+		synchronized (this) {
+			while (evicting.contains(key)) {
+				wait();
+			}
+			Integer count = pinned.get(key);
+			pinned.put(key, count == null ? 1 : count + 1);
+		}
+	}
+
+	public synchronized void unpin(File versionDir) {
+		File key = versionDir.getAbsoluteFile();
+		Integer count = pinned.get(key);
+		if (count == null || count <= 1) {
+			pinned.remove(key);
+		} else {
+			pinned.put(key, count - 1);
+		}
+	}
+
+	/**
+	 * Records an access to a version directory.
+	 */
+	public void touch(File versionDir) {
+		if (versionDir.isDirectory() && !versionDir.setLastModified(System.currentTimeMillis())) {
+			log.fine("could not update the access time of " + versionDir);
+		}
+	}
+
+	/**
+	 * Measures the local repository and deletes the least recently used version directories until
+	 * it fits into the quota.
+	 *
+	 * @param quotaBytes the maximum size of the repository, <code>0</code> to measure only
+	 * @return the number of bytes occupied afterwards
+	 */
+	public long evict(File localRepository, long quotaBytes) {
+		List<VersionDir> dirs = new ArrayList<VersionDir>();
+		long total = scan(localRepository, dirs);
+		if (quotaBytes > 0 && total > quotaBytes) {
+			Collections.sort(dirs, new Comparator<VersionDir>() {
+				@Override
+				public int compare(VersionDir a, VersionDir b) {
+					return a.lastAccess < b.lastAccess ? -1 : a.lastAccess == b.lastAccess ? 0 : 1;
+				}
+			});
+			for (VersionDir dir : dirs) {
+				if (total <= quotaBytes) {
+					break;
+				}
+				if (!claim(dir.dir)) {
+					continue;
+				}
+				try {
+					Util.deleteRecursive(dir.dir);
+					total -= dir.bytes;
+					evictions.incrementAndGet();
+					evictedBytes.addAndGet(dir.bytes);
+					log.fine("evicted " + dir.dir + " (" + dir.bytes + " bytes)");
+					deleteEmptyParents(dir.dir.getParentFile(), localRepository);
+				} catch (IOException e) {
+					log.log(Level.WARNING, "could not evict " + dir.dir, e);
+				} finally {
+					release(dir.dir);
+				}
+			}
+		}
+		this.occupiedBytes = total;
+		this.quotaBytes = quotaBytes;
+		this.lastRun = System.currentTimeMillis();
+		return total;
+	}
+
+	private synchronized boolean claim(File dir) {
+		File key = dir.getAbsoluteFile();
+		if (pinned.containsKey(key)) {
+			return false;
+		}
+		evicting.add(key);
+		return true;
+	}
+
+	private synchronized void release(File dir) {
+		evicting.remove(dir.getAbsoluteFile());
+		notifyAll();
+	}
+
+	/**
+	 * Collects the version directories below the given directory: directories which contain a file
+	 * named <code>artifactId-version...</code>.
+	 *
+	 * @return the size of all files below the directory
+	 */
+	private static long scan(File dir, List<VersionDir> out) {
+		File[] children = dir.listFiles();
+		if (children == null) {
+			return 0;
+		}
+		String prefix = dir.getParentFile() == null ? null : dir.getParentFile().getName() + "-" + dir.getName();
+		boolean versionDir = false;
+		long bytes = 0;
+		long nested = 0;
+		for (File child : children) {
+			if (child.isDirectory()) {
+				nested += scan(child, out);
+			} else {
+				bytes += child.length();
+				versionDir |= prefix != null && child.getName().startsWith(prefix);
+			}
+		}
+		if (versionDir) {
+			out.add(new VersionDir(dir, bytes + nested, dir.lastModified()));
+		}
+		return bytes + nested;
+	}
+
+	private static void deleteEmptyParents(File dir, File root) {
+		File stop = root.getAbsoluteFile();
+		for (File d = dir.getAbsoluteFile(); d != null && !d.equals(stop); d = d.getParentFile()) {
+			String[] children = d.list();
+			if (children == null || children.length > 0 || !d.delete()) {
+				return;
+			}
+		}
+	}
+
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	public long getEvictedBytes() {
+		return evictedBytes.get();
+	}
+
+	/**
+	 * @return the size of the local repository at the last run, <code>-1</code> if not measured yet
+	 */
+	public long getOccupiedBytes() {
+		return occupiedBytes;
+	}
+
+	/**
+	 * @return the quota used at the last run, <code>0</code> if unlimited
+	 */
+	public long getQuotaBytes() {
+		return quotaBytes;
+	}
+
+	/**
+	 * @return the time of the last run, <code>0</code> if it did not run yet
+	 */
+	public long getLastRun() {
+		return lastRun;
+	}
+
+	public synchronized int getPinnedCount() {
+		return pinned.size();
+	}
+
+	private static final class VersionDir {
+		private final File dir;
+		private final long bytes;
+		private final long lastAccess;
+
+		VersionDir(File dir, long bytes, long lastAccess) {
+			this.dir = dir;
+			this.bytes = bytes;
+			this.lastAccess = lastAccess;
+		}
+	}
+}
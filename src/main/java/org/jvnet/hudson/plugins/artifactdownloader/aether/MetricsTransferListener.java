@@ -0,0 +1,136 @@
+package org.jvnet.hudson.plugins.artifactdownloader.aether;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.aether.repository.ArtifactRepository;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.resolution.ArtifactResult;
+import org.eclipse.aether.transfer.AbstractTransferListener;
+import org.eclipse.aether.transfer.TransferEvent;
+import org.eclipse.aether.transfer.TransferResource;
+import org.jvnet.hudson.plugins.artifactdownloader.RepositoryConfig;
+
+/**
+ * Records the transfers of a session into {@link TransferMetrics} and keeps the totals of the
+ * session for the summary line in the build log.
+ */
+final class MetricsTransferListener extends AbstractTransferListener {
+
+	private final Map<String, String> repoIds;
+	private final ConcurrentMap<TransferResource, Long> initiated = new ConcurrentHashMap<TransferResource, Long>();
+
+	private final AtomicLong transfers = new AtomicLong();
+	private final AtomicLong bytes = new AtomicLong();
+	private final AtomicLong transferMillis = new AtomicLong();
+	private final AtomicLong timeToFirstByte = new AtomicLong();
+	private final AtomicLong failures = new AtomicLong();
+	private final AtomicLong corrupted = new AtomicLong();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong queueWait = new AtomicLong();
+	private final AtomicLong throttled = new AtomicLong();
+
+	MetricsTransferListener(List<RepositoryConfig> repositoryConfigs) {
+		this.repoIds = HealthTransferListener.repoIds(repositoryConfigs);
+	}
+
+	@Override
+	public void transferInitiated(TransferEvent event) {
+		initiated.put(event.getResource(), System.currentTimeMillis());
+	}
+
+	@Override
+	public void transferStarted(TransferEvent event) {
+		Long start = initiated.get(event.getResource());
+		TransferMetrics.RepositoryMetrics metrics = getMetrics(event);
+		if(start != null && metrics != null) {
+			long millis = System.currentTimeMillis() - start;
+			metrics.recordTimeToFirstByte(millis);
+			timeToFirstByte.addAndGet(millis);
+		}
+	}
+
+	@Override
+	public void transferSucceeded(TransferEvent event) {
+		Long start = initiated.remove(event.getResource());
+		TransferMetrics.RepositoryMetrics metrics = getMetrics(event);
+		long millis = start == null ? 0 : System.currentTimeMillis() - start;
+		if(metrics != null) {
+			metrics.recordTransfer(event.getTransferredBytes(), millis);
+		}
+		transfers.incrementAndGet();
+		bytes.addAndGet(event.getTransferredBytes());
+		transferMillis.addAndGet(millis);
+	}
+
+	@Override
+	public void transferFailed(TransferEvent event) {
+		initiated.remove(event.getResource());
+		boolean missing = HealthTransferListener.isNotFound(event);
+		TransferMetrics.RepositoryMetrics metrics = getMetrics(event);
+		if(metrics != null) {
+			metrics.recordFailure(missing);
+		}
+		if(!missing) {
+			failures.incrementAndGet();
+		}
+	}
+
+	@Override
+	public void transferCorrupted(TransferEvent event) {
+		TransferMetrics.RepositoryMetrics metrics = getMetrics(event);
+		if(metrics != null) {
+			metrics.recordCorrupted();
+		}
+		corrupted.incrementAndGet();
+	}
+
+	/**
+	 * Records where a resolved artifact came from, the local repository or a remote one.
+	 */
+	void recordResolution(ArtifactResult result) {
+		ArtifactRepository repository = result.getRepository();
+		if(repository instanceof RemoteRepository) {
+			TransferMetrics.get().recordResolution(repository.getId());
+		} else {
+			TransferMetrics.get().recordResolution(null);
+			hits.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Records the time a transfer waited for a slot of its repository.
+	 */
+	void recordQueueWait(String repoId, long millis) {
+		TransferMetrics.get().getRepository(repoId).recordQueueWait(millis);
+		queueWait.addAndGet(millis);
+	}
+
+	/**
+	 * Records the time a transfer was slowed down to stay below the bandwidth limit.
+	 */
+	void recordThrottle(long millis) {
+		throttled.addAndGet(millis);
+	}
+
+	private TransferMetrics.RepositoryMetrics getMetrics(TransferEvent event) {
+		String repoId = HealthTransferListener.getRepoId(repoIds, event);
+		return repoId == null ? null : TransferMetrics.get().getRepository(repoId);
+	}
+
+	/**
+	 * @return a line summarizing the transfers of the session
+	 */
+	String summary() {
+		long count = transfers.get();
+		long millis = Math.max(1, transferMillis.get());
+		return "transfers: "+count+" ("+bytes.get()+" bytes, "+(bytes.get() * 1000 / 1024 / millis)+" KB/s while transferring"
+				+ (count == 0 ? "" : ", average time to first byte "+(timeToFirstByte.get() / count)+" ms")
+				+ "), "+failures.get()+" failed, "+corrupted.get()+" corrupted, "+hits.get()+" artifacts from the local repository"
+				+ (queueWait.get() > 0 ? ", waited "+queueWait.get()+" ms for transfer slots" : "")
+				+ (throttled.get() > 0 ? ", throttled for "+throttled.get()+" ms" : "");
+	}
+}
@@ -0,0 +1,126 @@
+package org.jvnet.hudson.plugins.artifactdownloader.aether;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers for a short time which artifacts could not be found and which artifacts have no
+ * versions at all, keyed by the repositories asked and the coordinates. Lookups of mistyped or
+ * not yet deployed coordinates are answered from here instead of asking the repositories again.
+ * Nodes keep a cache of their own, they forget their results whenever the generation of the
+ * controller's cache changes.
+ */
+public final class NegativeResultCache {
+
+	public static final int DEFAULT_TTL_SECONDS = 60;
+
+	/** more entries than this are cleaned up, the cache must not grow with every typo */
+	private static final int MAX_ENTRIES = 10000;
+
+	private static final NegativeResultCache INSTANCE = new NegativeResultCache();
+
+	private final ConcurrentMap<String, Long> expiries = new ConcurrentHashMap<String, Long>();
+
+	private volatile long ttlMillis = TimeUnit.SECONDS.toMillis(DEFAULT_TTL_SECONDS);
+
+	/** changes whenever all results are forgotten, unrelated between different JVMs */
+	private final AtomicLong generation = new AtomicLong(System.currentTimeMillis());
+
+	private NegativeResultCache() {
+	}
+
+	public static NegativeResultCache get() {
+		return INSTANCE;
+	}
+
+	/**
+	 * @param ttlSeconds seconds a missing result is remembered, <code>0</code> disables the cache
+	 */
+	public void configure(int ttlSeconds) {
+		this.ttlMillis = TimeUnit.SECONDS.toMillis(Math.max(0, ttlSeconds));
+		if (ttlMillis == 0) {
+			expiries.clear();
+		}
+	}
+
+	public int getTtlSeconds() {
+		return (int) TimeUnit.MILLISECONDS.toSeconds(ttlMillis);
+	}
+
+	/**
+	 * @return the generation of the cached results, sent along to the nodes with every remote download
+	 */
+	public long getGeneration() {
+		return generation.get();
+	}
+
+	/**
+	 * Forgets all missing results if they were recorded under another generation of the controller's
+	 * cache, i.e. before its repository configuration changed or it was invalidated.
+	 */
+	public void synchronize(long controllerGeneration) {
+		if (generation.getAndSet(controllerGeneration) != controllerGeneration) {
+			expiries.clear();
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if the key was recorded as missing and did not expire yet
+	 */
+	public boolean isMissing(String key) {
+		Long expiry = expiries.get(key);
+		if (expiry == null) {
+			return false;
+		}
+		if (expiry < System.currentTimeMillis()) {
+			expiries.remove(key, expiry);
+			return false;
+		}
+		return true;
+	}
+
+	public void recordMissing(String key) {
+		if (ttlMillis == 0) {
+			return;
+		}
+		long now = System.currentTimeMillis();
+		if (expiries.size() >= MAX_ENTRIES) {
+			purge(now);
+		}
+		expiries.put(key, now + ttlMillis);
+	}
+
+	/**
+	 * Forgets a missing result, e.g. because it was found after all.
+	 */
+	public void remove(String key) {
+		expiries.remove(key);
+	}
+
+	/**
+	 * Forgets all missing results, e.g. after the repository configuration has changed.
+	 */
+	public void invalidateAll() {
+		generation.incrementAndGet();
+		expiries.clear();
+	}
+
+	public int size() {
+		return expiries.size();
+	}
+
+	private void purge(long now) {
+		for (Iterator<Map.Entry<String, Long>> it = expiries.entrySet().iterator(); it.hasNext();) {
+			if (it.next().getValue() < now) {
+				it.remove();
+			}
+		}
+		if (expiries.size() >= MAX_ENTRIES) {
+			expiries.clear();
+		}
+	}
+}
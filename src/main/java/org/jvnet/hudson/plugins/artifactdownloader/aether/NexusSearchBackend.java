@@ -0,0 +1,111 @@
+package org.jvnet.hudson.plugins.artifactdownloader.aether;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.eclipse.aether.version.InvalidVersionSpecificationException;
+import org.eclipse.aether.version.Version;
+import org.jvnet.hudson.plugins.artifactdownloader.RepositoryConfig;
+
+/**
+ * Lists versions with the search REST API of Nexus 3 (<code>/service/rest/v1/search</code>). The
+ * repository url has to be a Nexus repository url (<code>http://host/repository/name/</code>), the
+ * versions are sorted by the server and fetched page by page until the filter's limit is reached.
+ */
+public class NexusSearchBackend implements RepositoryManagerBackend {
+
+	private static final Pattern REPOSITORY_URL = Pattern.compile("(.*)/repository/([^/]+)/?");
+
+	static final int TIMEOUT_MILLIS = (int) TimeUnit.SECONDS.toMillis(10);
+
+	@Override
+	public List<Version> listVersions(RepositoryConfig repo, String groupId, String artifactId, VersionFilter filter) throws IOException {
+		Matcher m = REPOSITORY_URL.matcher(StringUtils.defaultString(repo.getUrl()));
+		if(!m.matches()) {
+			throw new IOException("not a Nexus repository url: "+repo.getUrl());
+		}
+		String base = m.group(1)+"/service/rest/v1/search?sort=version&direction=desc"
+				+"&repository="+encode(m.group(2))
+				+"&maven.groupId="+encode(groupId)
+				+"&maven.artifactId="+encode(artifactId);
+
+		Set<Version> versions = new LinkedHashSet<Version>();
+		String continuationToken = null;
+		do {
+			String url = continuationToken == null ? base : base+"&continuationToken="+encode(continuationToken);
+			JSONObject page = JSONObject.fromObject(get(repo, url));
+			JSONArray items = page.optJSONArray("items");
+			if(items != null) {
+				for(int i = 0; i < items.size() && !filter.isLimitReached(versions.size()); i++) {
+					String version = items.getJSONObject(i).optString("version", null);
+					if(version != null) {
+						// each deployment of a snapshot is a component of its own, list it once by its base version
+						Version accepted = accept(filter, VersionFilter.toBaseVersion(version));
+						if(accepted != null) {
+							versions.add(accepted);
+						}
+					}
+				}
+			}
+			continuationToken = StringUtils.trimToNull(page.optString("continuationToken", null));
+			if("null".equals(continuationToken)) {
+				continuationToken = null;
+			}
+		} while(continuationToken != null && !filter.isLimitReached(versions.size()));
+		return new ArrayList<Version>(versions);
+	}
+
+	private static Version accept(VersionFilter filter, String version) throws IOException {
+		try {
+			return filter.accept(version);
+		} catch (InvalidVersionSpecificationException e) {
+			throw new IOException("invalid version "+version, e);
+		}
+	}
+
+	private String get(RepositoryConfig repo, String url) throws IOException {
+		HttpURLConnection con = (HttpURLConnection) new URL(url).openConnection();
+		try {
+			con.setConnectTimeout(repo.getConnectTimeout() > 0 ? repo.getConnectTimeout() : TIMEOUT_MILLIS);
+			con.setReadTimeout(repo.getReadTimeout() > 0 ? repo.getReadTimeout() : TIMEOUT_MILLIS);
+			con.setRequestProperty("Accept", "application/json");
+			if(!StringUtils.isEmpty(repo.getUser())) {
+				String credentials = repo.getUser()+":"+StringUtils.defaultString(repo.getPassword());
+				con.setRequestProperty("Authorization", "Basic "+Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8)));
+			}
+			int status = con.getResponseCode();
+			if(status != HttpURLConnection.HTTP_OK) {
+				throw new IOException("search request failed with status "+status+": "+url);
+			}
+			InputStream in = con.getInputStream();
+			try {
+				return IOUtils.toString(in, "UTF-8");
+			} finally {
+				in.close();
+			}
+		} finally {
+			con.disconnect();
+		}
+	}
+
+	private static String encode(String value) throws IOException {
+		return URLEncoder.encode(value, "UTF-8");
+	}
+}
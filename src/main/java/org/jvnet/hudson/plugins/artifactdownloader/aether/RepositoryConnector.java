@@ -2,42 +2,55 @@ package org.jvnet.hudson.plugins.artifactdownloader.aether;
 
 import java.io.Closeable;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
 
 import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
-import org.apache.maven.repository.internal.DefaultVersionResolver;
-import org.apache.maven.repository.internal.MavenRepositorySystemUtils;
+import org.eclipse.aether.ConfigurationProperties;
 import org.eclipse.aether.DefaultRepositorySystemSession;
 import org.eclipse.aether.RepositorySystem;
 import org.eclipse.aether.RepositorySystemSession;
 import org.eclipse.aether.artifact.Artifact;
 import org.eclipse.aether.artifact.DefaultArtifact;
-import org.eclipse.aether.connector.basic.BasicRepositoryConnectorFactory;
-import org.eclipse.aether.impl.DefaultServiceLocator;
-import org.eclipse.aether.impl.VersionResolver;
+import org.eclipse.aether.metadata.DefaultMetadata;
+import org.eclipse.aether.metadata.Metadata;
 import org.eclipse.aether.repository.Authentication;
-import org.eclipse.aether.repository.LocalRepository;
 import org.eclipse.aether.repository.RemoteRepository;
 import org.eclipse.aether.resolution.ArtifactRequest;
 import org.eclipse.aether.resolution.ArtifactResolutionException;
 import org.eclipse.aether.resolution.ArtifactResult;
+import org.eclipse.aether.resolution.MetadataRequest;
+import org.eclipse.aether.resolution.MetadataResult;
 import org.eclipse.aether.resolution.VersionRangeRequest;
 import org.eclipse.aether.resolution.VersionRangeResolutionException;
 import org.eclipse.aether.resolution.VersionRangeResult;
-import org.eclipse.aether.spi.connector.RepositoryConnectorFactory;
-import org.eclipse.aether.spi.connector.transport.TransporterFactory;
+import org.eclipse.aether.transfer.ArtifactNotFoundException;
+import org.eclipse.aether.transfer.ArtifactTransferException;
+import org.eclipse.aether.transfer.MetadataNotFoundException;
 import org.eclipse.aether.transfer.TransferCancelledException;
 import org.eclipse.aether.transfer.TransferEvent;
 import org.eclipse.aether.transfer.TransferListener;
-import org.eclipse.aether.transport.file.FileTransporterFactory;
-import org.eclipse.aether.transport.http.HttpTransporterFactory;
+import org.eclipse.aether.util.listener.ChainedTransferListener;
 import org.eclipse.aether.util.repository.AuthenticationBuilder;
 import org.eclipse.aether.version.Version;
 import org.jvnet.hudson.plugins.artifactdownloader.ArtifactConfig;
@@ -45,52 +58,112 @@ import org.jvnet.hudson.plugins.artifactdownloader.RepositoryConfig;
 
 public class RepositoryConnector implements Closeable {
 
+	/**
+	 * Resolutions currently running in this JVM, keyed by local repository, remote repositories and artifact coordinates.
+	 */
+	private static final SingleFlight<String, ArtifactResult> RESOLUTIONS = new SingleFlight<String, ArtifactResult>();
+
+	static final long MAX_RETRY_BACKOFF = TimeUnit.SECONDS.toMillis(60);
+	/** partial downloads of at least this size are resumed instead of being started again */
+	private static final int RESUME_THRESHOLD = 64 * 1024;
+	/** zip archives are extracted with at most this many threads */
+	private static final int MAX_UNPACK_THREADS = 4;
+	/** times an artifact evicted right after its resolution is resolved again before giving up */
+	private static final int MAX_EVICTION_RETRIES = 2;
+
 	private List<RepositoryConfig> repositoryConfigs = new ArrayList<RepositoryConfig>();
 	private final PrintStream logger;
 
-	private File tmpRepo;
-	
+	private final File localRepository;
+	private final boolean isolated;
+	private int threads = 1;
+	private DeliveryStrategy deliveryStrategy = DeliveryStrategy.DEFAULT;
+	private boolean incremental;
+	private boolean unpack;
+	private String unpackIncludes;
+	private String unpackExcludes;
+	private RepositoryManagerBackend repositoryManagerBackend = new NexusSearchBackend();
+
+	/**
+	 * Creates a connector working on an isolated local repository, which is
+	 * removed again when the connector is closed.
+	 */
 	public RepositoryConnector(PrintStream logger, List<RepositoryConfig> repositoryConfigs) throws IOException {
+		this(logger, repositoryConfigs, null);
+	}
+
+	/**
+	 * Creates a connector working on the given local repository. The repository
+	 * is shared with other connectors and kept on {@link #close()}, already resolved
+	 * artifacts are therefore not downloaded again. If no local repository is given,
+	 * an isolated temporary one is used instead.
+	 */
+	public RepositoryConnector(PrintStream logger, List<RepositoryConfig> repositoryConfigs, File localRepository) throws IOException {
 		this.logger = logger == null ? System.out : logger;
 		this.repositoryConfigs = repositoryConfigs;
-		tmpRepo = File.createTempFile("local_repo_", "");
+		if(localRepository == null) {
+			this.localRepository = createTmpRepo();
+			this.isolated = true;
+		} else {
+			if(!localRepository.isDirectory() && !localRepository.mkdirs()) {
+				throw new IOException("failed to create local repository: "+localRepository.getAbsolutePath());
+			}
+			this.localRepository = localRepository;
+			this.isolated = false;
+		}
+	}
+
+	private static File createTmpRepo() throws IOException {
+		File tmpRepo = File.createTempFile("local_repo_", "");
 		if(!tmpRepo.delete()) {
 			throw new IOException("failed to create tmp file: "+tmpRepo.getAbsolutePath());
 		}
 		if(!tmpRepo.mkdirs()) {
 			throw new IOException("failed to create tmp file!");
 		}
+		return tmpRepo;
+	}
+
+	public File getLocalRepository() {
+		return localRepository;
+	}
+
+	public boolean isIsolated() {
+		return isolated;
 	}
 
 	@Override
 	public void close() throws IOException {
-		FileUtils.deleteDirectory(tmpRepo);
+		if(isolated) {
+			FileUtils.deleteDirectory(localRepository);
+		}
 	}
 	
-	private RepositorySystem createRepoSystem() {
-		DefaultServiceLocator locator = MavenRepositorySystemUtils.newServiceLocator();
-		locator.addService(RepositoryConnectorFactory.class, BasicRepositoryConnectorFactory.class);
-		locator.addService(TransporterFactory.class, FileTransporterFactory.class);
-		locator.addService(TransporterFactory.class, HttpTransporterFactory.class);
-		locator.addService(VersionResolver.class, DefaultVersionResolver.class);
-		locator.setErrorHandler(new DefaultServiceLocator.ErrorHandler() {
-			@Override
-			public void serviceCreationFailed(Class<?> type, Class<?> impl, Throwable exception) {
-				logger.println("error creating repository service");
-				exception.printStackTrace(logger);
-			}
-		});
-		RepositorySystem out = locator.getService(RepositorySystem.class);
-		if(out==null) {
-			throw new RuntimeException("unable to create a repository system");
-		}
-		return out;
+	private RepositorySystemSession newSession(RepositorySystemHolder holder) {
+		return newSession(holder, new MetricsTransferListener(repositoryConfigs));
 	}
 
-	private RepositorySystemSession newSession(RepositorySystem system) throws IOException {
-		DefaultRepositorySystemSession session = MavenRepositorySystemUtils.newSession();
-		LocalRepository localRepo = new LocalRepository(tmpRepo);
-		session.setTransferListener(new TransferListener() {
+	private RepositorySystemSession newSession(RepositorySystemHolder holder, MetricsTransferListener metrics) {
+		DefaultRepositorySystemSession session = holder.newSession(localRepository, !isolated);
+		// batches are downloaded by the basic connector, using as many threads as we deliver with
+		// but not more than the repositories allow connections
+		int connections = threads;
+		for(RepositoryConfig conf : repositoryConfigs) {
+			if(conf.getMaxConnections() > 0) {
+				connections = Math.min(connections, conf.getMaxConnections());
+			}
+			if(conf.getConnectTimeout() > 0) {
+				session.setConfigProperty(ConfigurationProperties.CONNECT_TIMEOUT+"."+conf.getId(), conf.getConnectTimeout());
+			}
+			if(conf.getReadTimeout() > 0) {
+				session.setConfigProperty(ConfigurationProperties.REQUEST_TIMEOUT+"."+conf.getId(), conf.getReadTimeout());
+			}
+		}
+		session.setConfigProperty("aether.connector.basic.threads", connections);
+		// keep the partial file of a broken transfer, the retry continues with a range request
+		session.setConfigProperty("aether.connector.resumeDownloads", true);
+		session.setConfigProperty("aether.connector.resumeThreshold", RESUME_THRESHOLD);
+		TransferListener console = new TransferListener() {
 			
 			@Override
 			public void transferSucceeded(TransferEvent arg0) {
@@ -118,16 +191,13 @@ public class RepositoryConnector implements Closeable {
 			
 			@Override
 			public void transferCorrupted(TransferEvent arg0) throws TransferCancelledException {
-				// TODO Auto-generated method stub
-				
+				logger.println("checksum mismatch: "+arg0.getResource().getResourceName()+" ("+arg0.getException().getMessage()+")");
 			}
-		});
-		return session.setLocalRepositoryManager(
-				system.newLocalRepositoryManager(
-						session, 
-						localRepo
-				)
-		);
+		};
+		session.setTransferListener(ChainedTransferListener.newInstance(
+				new LimitingTransferListener(repositoryConfigs, logger, metrics), console, new HealthTransferListener(repositoryConfigs), metrics));
+		session.setReadOnly();
+		return session;
 	}
 
 	private List<RemoteRepository> getRepositories() {
@@ -144,16 +214,46 @@ public class RepositoryConnector implements Closeable {
 			}
 			out.add(builder.build());
 		}
-		return out;
+		// ask the fastest healthy repository first
+		return RepositoryHealth.get().order(out);
 	}
 
+	/**
+	 * Lists the versions of an artifact.
+	 * 
+	 * @param versionConstraints a version range like <code>[1.0,2.0)</code>, <code>null</code> for all versions
+	 * @return the versions in ascending order
+	 */
 	public List<Version> listVersions(String groupId, String artifactId, String packaging, String classifier, String versionConstraints) throws VersionRangeResolutionException, IOException {
-		RepositorySystem system = createRepoSystem();
-		RepositorySystemSession session = newSession(system);
+		List<Version> versions = listFilteredVersions(groupId, artifactId, packaging, classifier, new VersionFilter(versionConstraints, null, null, null, 0));
+		Collections.reverse(versions);
+		return versions;
+	}
 
-		Artifact artifact = new DefaultArtifact( groupId+":"+artifactId+":[0,)" );
-		
-		logger.println("resolving artigfact: "+artifact);
+	/**
+	 * Lists the versions of an artifact accepted by the given filter. The versions are filtered while
+	 * walking from the newest to the oldest one and listing stops as soon as the filter's limit is reached.
+	 * 
+	 * @return the versions, newest first
+	 */
+	public List<Version> listFilteredVersions(String groupId, String artifactId, String packaging, String classifier, VersionFilter filter) throws VersionRangeResolutionException, IOException {
+		List<Version> managed = listVersionsFromRepositoryManager(groupId, artifactId, filter);
+		if(managed != null) {
+			return managed;
+		}
+
+		Artifact artifact = new DefaultArtifact( groupId, artifactId, classifier, StringUtils.isEmpty(packaging) ? "jar" : packaging, filter.getRange() );
+		String missingKey = negativeKey("versions:"+artifact);
+		if(NegativeResultCache.get().isMissing(missingKey)) {
+			logger.println("no versions of "+groupId+":"+artifactId+" found recently, not asking again");
+			return new ArrayList<Version>();
+		}
+
+		RepositorySystemHolder holder = RepositorySystemHolder.get();
+		RepositorySystem system = holder.getSystem();
+		RepositorySystemSession session = newSession(holder);
+
+		logger.println("resolving artifact: "+artifact);
 		
 		VersionRangeRequest rangeRequest = new VersionRangeRequest();
         rangeRequest.setArtifact( artifact );
@@ -166,51 +266,749 @@ public class RepositoryConnector implements Closeable {
         rangeRequest.setRepositories(repos);
 
         VersionRangeResult rangeResult = system.resolveVersionRange( session, rangeRequest );
-		logger.println("versions found: "+rangeResult.getVersions().size());
-		return rangeResult.getVersions();
+        List<Version> all = rangeResult.getVersions();
+        if(all.isEmpty() && rangeResult.getExceptions().isEmpty()) {
+        	recordMissing(missingKey, repos);
+        }
+        List<Version> out = new ArrayList<Version>();
+        for(ListIterator<Version> it = all.listIterator(all.size()); it.hasPrevious() && !filter.isLimitReached(out.size()); ) {
+        	Version version = it.previous();
+        	if(filter.accept(version)) {
+        		out.add(version);
+        	}
+        }
+		logger.println("versions found: "+all.size()+", listed: "+out.size());
+		return out;
+	}
+
+	/**
+	 * Checks whether any version of the artifact exists without listing the versions: the repository
+	 * manager search is asked for a single version, static repositories are asked for the artifact's
+	 * <code>maven-metadata.xml</code>, which is not parsed.
+	 * 
+	 * @return <code>true</code> if one of the repositories knows the artifact
+	 * @throws IOException if a repository could not be asked
+	 */
+	public boolean exists(String groupId, String artifactId) throws IOException {
+		String missingKey = negativeKey("exists:"+groupId+":"+artifactId);
+		if(NegativeResultCache.get().isMissing(missingKey)) {
+			return false;
+		}
+		if(listVersionsFromRepositoryManager(groupId, artifactId, new VersionFilter(null, null, null, null, 1)) != null) {
+			return true;
+		}
+
+		RepositorySystemHolder holder = RepositorySystemHolder.get();
+		RepositorySystemSession session = newSession(holder);
+		Metadata metadata = new DefaultMetadata(groupId, artifactId, "maven-metadata.xml", Metadata.Nature.RELEASE_OR_SNAPSHOT);
+		List<MetadataRequest> requests = new ArrayList<MetadataRequest>();
+		List<RemoteRepository> repos = getRepositories();
+		for(RemoteRepository rr : repos) {
+			requests.add(new MetadataRequest(metadata, rr, null));
+		}
+		Exception failure = null;
+		for(MetadataResult result : holder.getSystem().resolveMetadata(session, requests)) {
+			if(result.isResolved()) {
+				return true;
+			}
+			if(result.getException() != null && !(result.getException() instanceof MetadataNotFoundException)) {
+				failure = result.getException();
+			}
+		}
+		if(failure != null) {
+			throw new IOException(failure.getMessage(), failure);
+		}
+		recordMissing(missingKey, repos);
+		return false;
 	}
 
-	public boolean downloadArtifacts(List<ArtifactConfig> artifacts) throws VersionRangeResolutionException, IOException, ArtifactResolutionException {
-		RepositorySystem system = createRepoSystem();
-		RepositorySystemSession session = newSession(system);
+	/**
+	 * Records a missing result, unless repositories which are down were left out of the request. An
+	 * artifact which only exists on such a repository must not be reported missing for the whole time
+	 * to live, neither here nor on the nodes.
+	 */
+	private void recordMissing(String key, List<RemoteRepository> asked) {
+		if(asked.size() < repositoryConfigs.size()) {
+			return;
+		}
+		NegativeResultCache.get().recordMissing(key);
+	}
+
+	/**
+	 * Lists the versions with the {@link RepositoryManagerBackend} if all repositories are repository managers.
+	 * 
+	 * @return the versions newest first, <code>null</code> if the versions have to be taken from the metadata
+	 */
+	private List<Version> listVersionsFromRepositoryManager(String groupId, String artifactId, VersionFilter filter) {
+		if(repositoryConfigs.isEmpty()) {
+			return null;
+		}
+		for(RepositoryConfig conf : repositoryConfigs) {
+			if(!conf.isRepositoryManager()) {
+				return null;
+			}
+		}
+		Set<Version> versions = new TreeSet<Version>(Collections.reverseOrder());
+		try {
+			for(RepositoryConfig conf : repositoryConfigs) {
+				logger.println("searching versions of "+groupId+":"+artifactId+" in repository manager "+conf.getId());
+				versions.addAll(repositoryManagerBackend.listVersions(conf, groupId, artifactId, filter));
+			}
+		} catch (IOException e) {
+			logger.println("repository manager search not available, falling back to metadata: "+e.getMessage());
+			return null;
+		}
+		if(versions.isEmpty()) {
+			return null;
+		}
+		List<Version> out = new ArrayList<Version>(versions);
+		if(filter.isLimitReached(out.size())) {
+			out = new ArrayList<Version>(out.subList(0, filter.getLimit()));
+		}
+		logger.println("versions found: "+out.size());
+		return out;
+	}
+
+	/**
+	 * Sets the backend used to list versions of repositories flagged as repository manager.
+	 */
+	public void setRepositoryManagerBackend(RepositoryManagerBackend repositoryManagerBackend) {
+		this.repositoryManagerBackend = repositoryManagerBackend;
+	}
+
+	/**
+	 * Sets the number of artifacts which are downloaded and copied concurrently by
+	 * {@link #downloadArtifacts(List)}, <code>1</code> (the default) handles them one after the other.
+	 */
+	public void setThreads(int threads) {
+		this.threads = Math.max(1, threads);
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * Sets the preferred way of delivering resolved files to their targets, see {@link DeliveryStrategy}.
+	 */
+	public void setDeliveryStrategy(DeliveryStrategy deliveryStrategy) {
+		this.deliveryStrategy = deliveryStrategy == null ? DeliveryStrategy.DEFAULT : deliveryStrategy;
+	}
+
+	public DeliveryStrategy getDeliveryStrategy() {
+		return deliveryStrategy;
+	}
+
+	/**
+	 * Enables the incremental mode: target files which already match the checksum published in
+	 * the repository are neither downloaded nor copied again.
+	 */
+	public void setIncremental(boolean incremental) {
+		this.incremental = incremental;
+	}
+
+	public boolean isIncremental() {
+		return incremental;
+	}
+
+	/**
+	 * Enables unpacking: zip, tar and tar.gz artifacts are extracted into the directory of their
+	 * target file instead of being copied there.
+	 */
+	public void setUnpack(boolean unpack) {
+		this.unpack = unpack;
+	}
+
+	public boolean isUnpack() {
+		return unpack;
+	}
+
+	/**
+	 * Sets the comma separated Ant style patterns of the archive entries to extract, all entries are extracted by default.
+	 */
+	public void setUnpackIncludes(String unpackIncludes) {
+		this.unpackIncludes = unpackIncludes;
+	}
+
+	/**
+	 * Sets the comma separated Ant style patterns of the archive entries not to extract.
+	 */
+	public void setUnpackExcludes(String unpackExcludes) {
+		this.unpackExcludes = unpackExcludes;
+	}
+
+	/**
+	 * Resolves the given artifacts and delivers them to their target files. All artifacts are resolved
+	 * as one batch, failures are reported per artifact and do not stop the others from being delivered.
+	 * 
+	 * @return <code>true</code> if all artifacts were delivered
+	 */
+	public boolean downloadArtifacts(List<ArtifactConfig> artifacts) throws IOException {
+		RepositorySystemHolder holder = RepositorySystemHolder.get();
+		RepositorySystem system = holder.getSystem();
+		MetricsTransferListener metrics = new MetricsTransferListener(repositoryConfigs);
+		RepositorySystemSession session = newSession(holder, metrics);
 
 		List<RemoteRepository> remotes = getRepositories();
+		for(RemoteRepository rr : remotes) {
+			long latency = RepositoryHealth.get().getLatency(rr.getId());
+			logger.println(" - using repository: "+rr.getId()+" ("+rr.getUrl()+")"+(latency < 0 ? "" : ", average latency "+latency+" ms"));
+		}
+		
+		long start = System.currentTimeMillis();
+		DirectDownload direct = new DirectDownload(holder, session, remotes, logger);
+		ArchiveExtractor extractor = unpack ? new ArchiveExtractor(unpackIncludes, unpackExcludes,
+				Math.min(MAX_UNPACK_THREADS, Runtime.getRuntime().availableProcessors()), logger) : null;
+
+		// keep the evictor away from the versions known in advance, the others are pinned once resolved
+		List<File> pinned = isolated ? Collections.<File>emptyList() : pinKnownDirectories(session, artifacts);
+		try {
+			return downloadArtifacts(system, session, remotes, artifacts, direct, extractor, metrics, start);
+		} finally {
+			logger.println(metrics.summary());
+			unpin(pinned);
+		}
+	}
+
+	private boolean downloadArtifacts(final RepositorySystem system, final RepositorySystemSession session, final List<RemoteRepository> remotes,
+			List<ArtifactConfig> artifacts, final DirectDownload direct, final ArchiveExtractor extractor,
+			final MetricsTransferListener metrics, long start) throws IOException {
+		if(incremental && extractor != null) {
+			// the entries of an archive have no single target file to compare the checksum with
+			logger.println("incremental download is not supported together with unpacking, all artifacts are downloaded");
+		} else if(incremental) {
+			artifacts = new UpToDateCheck(system, session, remotes, logger).filter(artifacts);
+		}
+
+		// entries with the same coordinates are resolved once and delivered to all their targets
+		final List<List<ArtifactConfig>> groups = groupByCoordinates(artifacts);
+		if(groups.size() < artifacts.size()) {
+			logger.println("avoided "+(artifacts.size() - groups.size())+" duplicate resolutions, "
+					+groups.size()+" unique artifacts for "+artifacts.size()+" targets");
+		}
+
+		// claim the artifacts which are not resolved by a concurrent call already, resolve those as one batch
+		final List<SingleFlight<String, ArtifactResult>.Flight> flights = new ArrayList<SingleFlight<String, ArtifactResult>.Flight>(groups.size());
+		List<SingleFlight<String, ArtifactResult>.Flight> owned = new ArrayList<SingleFlight<String, ArtifactResult>.Flight>();
+		List<ArtifactRequest> batch = new ArrayList<ArtifactRequest>();
+		for(List<ArtifactConfig> group : groups) {
+			ArtifactConfig ac = group.get(0);
+			logger.println("downloading artifact: "+ac+(group.size() > 1 ? " to "+group.size()+" targets" : ""));
+			if(ac.isStreamToTarget()) {
+				// streamed into the target by the delivering thread, not shared with anyone
+				flights.add(null);
+				continue;
+			}
+			Artifact artifact = new DefaultArtifact(ac.getGroupId(),ac.getArtifactId(),ac.getClassifier(),ac.getExtension(),ac.getVersion());
+			SingleFlight<String, ArtifactResult>.Flight flight = RESOLUTIONS.join(resolutionKey(artifact));
+			if(flight.isOwner() && NegativeResultCache.get().isMissing(negativeKey(artifact.toString()))) {
+				logger.println("artifact "+artifact+" was not found recently, not asking again");
+				flight.complete(missingResult(artifact, remotes));
+			} else if(flight.isOwner()) {
+				owned.add(flight);
+				batch.add(new ArtifactRequest(artifact, remotes, null));
+			} else {
+				logger.println("waiting for concurrent download of "+artifact);
+			}
+			flights.add(flight);
+		}
+		resolveBatch(system, session, batch, owned);
 		
 		boolean out = true;
+		long bytes = 0;
 		
-		for(ArtifactConfig ac : artifacts) {
-			logger.println("downloading artifact: "+ac);
-			
-			FileInputStream fisIn = null;
-			FileOutputStream fosOut = null;
+		int poolSize = Math.min(threads, groups.size());
+		if(poolSize <= 1) {
+			for(int i = 0; i < groups.size(); i++) {
+				try {
+					bytes += deliverArtifact(system, session, remotes, groups.get(i), flights.get(i), direct, extractor, metrics);
+				} catch (InterruptedIOException e) {
+					throw e;
+				} catch (Exception e) {
+					logError(groups.get(i).get(0), e);
+					out = false;
+				}
+			}
+		} else {
+			logger.println("delivering "+groups.size()+" artifacts with "+poolSize+" threads");
+			ExecutorService executor = Executors.newFixedThreadPool(poolSize, new NamingThreadFactory(new DaemonThreadFactory(), "RepositoryConnector.download"));
 			try {
-				ArtifactRequest request = new ArtifactRequest();
-				request.setArtifact(new DefaultArtifact(ac.getGroupId(),ac.getArtifactId(),ac.getExtension(),ac.getVersion()));
-				request.setRepositories(remotes);
-				ArtifactResult result = system.resolveArtifact(session, request);
-
-				File fIn = result.getArtifact().getFile(); 
-				File fOut = new File(ac.getTargetFileName());
-				
-				logger.println("copy artifact: "+fIn.getAbsolutePath()+" -> "+fOut.getAbsolutePath());
-				
-				fisIn = new FileInputStream(fIn);
-				fosOut = new FileOutputStream(fOut);
-				IOUtils.copy(fisIn,fosOut);
-			} catch (Exception e) {
-				logger.println("error copying file: "+e.getMessage());
-				e.printStackTrace(logger);
-				out = false;
+				List<Future<Long>> futures = new ArrayList<Future<Long>>(groups.size());
+				for(int i = 0; i < groups.size(); i++) {
+					final List<ArtifactConfig> group = groups.get(i);
+					final SingleFlight<String, ArtifactResult>.Flight flight = flights.get(i);
+					futures.add(executor.submit(new Callable<Long>() {
+						@Override
+						public Long call() throws Exception {
+							return deliverArtifact(system, session, remotes, group, flight, direct, extractor, metrics);
+						}
+					}));
+				}
+				for(int i = 0; i < groups.size(); i++) {
+					try {
+						bytes += futures.get(i).get();
+					} catch (InterruptedException e) {
+						throw new InterruptedIOException("interrupted while downloading "+groups.get(i).get(0));
+					} catch (ExecutionException e) {
+						logError(groups.get(i).get(0), e.getCause());
+						out = false;
+					}
+				}
 			} finally {
-				try {fisIn.close();} catch (Exception e2) { logger.println("unable to close file! (ignoring)");}
-				try {fosOut.close();} catch (Exception e2) {logger.println("unable to close file! (ignoring)");}
+				executor.shutdownNow();
 			}
 		}
+		
+		long duration = Math.max(1, System.currentTimeMillis() - start);
+		logger.println("downloaded "+groups.size()+" artifacts to "+artifacts.size()+" targets ("+bytes+" bytes) in "+duration+" ms, "
+				+ (bytes * 1000 / 1024 / duration) + " KB/s" + (poolSize > 1 ? " using "+poolSize+" threads" : ""));
 		return out;
 	}
 
-	
-	
-	
-	
+	/**
+	 * Groups the artifacts by their coordinates, keeping the order of their first occurrence.
+	 * Streamed and regular entries of the same artifact are kept apart, they are resolved differently.
+	 */
+	private static List<List<ArtifactConfig>> groupByCoordinates(List<ArtifactConfig> artifacts) {
+		Map<String, List<ArtifactConfig>> groups = new LinkedHashMap<String, List<ArtifactConfig>>();
+		for(ArtifactConfig ac : artifacts) {
+			String key = ac.getGroupId()+":"+ac.getArtifactId()+":"+ac.getExtension()+":"+ac.getClassifier()+":"+ac.getVersion()
+					+(ac.isStreamToTarget() ? "|stream" : "");
+			List<ArtifactConfig> group = groups.get(key);
+			if(group == null) {
+				group = new ArrayList<ArtifactConfig>();
+				groups.put(key, group);
+			}
+			group.add(ac);
+		}
+		return new ArrayList<List<ArtifactConfig>>(groups.values());
+	}
+
+	/**
+	 * Resolves the given artifacts into the local repository without delivering them anywhere. A
+	 * later {@link #downloadArtifacts(List)} takes them from there or joins the running resolution.
+	 * Artifacts resolved by a concurrent call and artifacts streamed to their target are skipped.
+	 * 
+	 * @return the number of artifacts resolved by this call
+	 */
+	public int prefetchArtifacts(List<ArtifactConfig> artifacts) {
+		if(isolated) {
+			// nobody would ever find them there
+			return 0;
+		}
+		RepositorySystemHolder holder = RepositorySystemHolder.get();
+		RepositorySystemSession session = newSession(holder);
+		List<RemoteRepository> remotes = getRepositories();
+
+		List<File> pinned;
+		try {
+			pinned = pinKnownDirectories(session, artifacts);
+		} catch (InterruptedIOException e) {
+			Thread.currentThread().interrupt();
+			return 0;
+		}
+		List<SingleFlight<String, ArtifactResult>.Flight> owned = new ArrayList<SingleFlight<String, ArtifactResult>.Flight>();
+		List<ArtifactRequest> batch = new ArrayList<ArtifactRequest>();
+		try {
+			for(ArtifactConfig ac : artifacts) {
+				if(ac.isStreamToTarget()) {
+					continue;
+				}
+				Artifact artifact = new DefaultArtifact(ac.getGroupId(),ac.getArtifactId(),ac.getClassifier(),ac.getExtension(),ac.getVersion());
+				SingleFlight<String, ArtifactResult>.Flight flight = RESOLUTIONS.join(resolutionKey(artifact));
+				if(!flight.isOwner()) {
+					continue;
+				}
+				if(NegativeResultCache.get().isMissing(negativeKey(artifact.toString()))) {
+					flight.complete(missingResult(artifact, remotes));
+					continue;
+				}
+				owned.add(flight);
+				batch.add(new ArtifactRequest(artifact, remotes, null));
+			}
+			resolveBatch(holder.getSystem(), session, batch, owned);
+
+			int resolved = 0;
+			for(SingleFlight<String, ArtifactResult>.Flight flight : owned) {
+				try {
+					ArtifactResult result = flight.get();
+					if(result.isResolved()) {
+						resolved++;
+						LocalRepositoryEvictor.get().touch(result.getArtifact().getFile().getParentFile());
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				} catch (ExecutionException e) {
+					logger.println("prefetching failed: "+e.getCause().getMessage());
+				}
+			}
+			return resolved;
+		} finally {
+			unpin(pinned);
+		}
+	}
+
+	/**
+	 * Pins the version directories which are known before the resolution, i.e. those of concrete
+	 * versions, so the evictor keeps away from them while they are resolved and delivered.
+	 * 
+	 * @return the pinned directories, to be passed to {@link #unpin(List)}
+	 */
+	private static List<File> pinKnownDirectories(RepositorySystemSession session, List<ArtifactConfig> artifacts) throws InterruptedIOException {
+		List<File> pinned = new ArrayList<File>(artifacts.size());
+		File basedir = session.getLocalRepository().getBasedir();
+		try {
+			for(ArtifactConfig ac : artifacts) {
+				if(ac.isStreamToTarget() || !isConcrete(ac.getVersion())) {
+					continue;
+				}
+				Artifact artifact = new DefaultArtifact(ac.getGroupId(),ac.getArtifactId(),ac.getClassifier(),ac.getExtension(),ac.getVersion());
+				File dir = new File(basedir, session.getLocalRepositoryManager().getPathForLocalArtifact(artifact)).getParentFile();
+				pin(dir);
+				pinned.add(dir);
+			}
+		} catch (InterruptedIOException e) {
+			unpin(pinned);
+			throw e;
+		}
+		return pinned;
+	}
+
+	private static void unpin(List<File> pinned) {
+		for(File dir : pinned) {
+			LocalRepositoryEvictor.get().unpin(dir);
+		}
+	}
+
+	/**
+	 * @return <code>false</code> for versions which are only known after their resolution: ranges,
+	 *         <code>RELEASE</code> and <code>LATEST</code>
+	 */
+	private static boolean isConcrete(String version) {
+		return !StringUtils.isEmpty(version) && !"RELEASE".equals(version) && !"LATEST".equals(version)
+				&& version.charAt(0) != '[' && version.charAt(0) != '(';
+	}
+
+	private static ArtifactResult missingResult(Artifact artifact, List<RemoteRepository> remotes) {
+		ArtifactResult missing = new ArtifactResult(new ArtifactRequest(artifact, remotes, null));
+		missing.addException(new ArtifactNotFoundException(artifact, null, "artifact "+artifact+" was not found within the last "
+				+NegativeResultCache.get().getTtlSeconds()+" seconds"));
+		return missing;
+	}
+
+	/**
+	 * Resolves the claimed artifacts with a single {@link RepositorySystem#resolveArtifacts(RepositorySystemSession, java.util.Collection)}
+	 * call and completes their flights with the individual results, including the failed ones.
+	 */
+	private void resolveBatch(RepositorySystem system, RepositorySystemSession session, List<ArtifactRequest> batch, List<SingleFlight<String, ArtifactResult>.Flight> owned) {
+		if(batch.isEmpty()) {
+			return;
+		}
+		try {
+			logger.println("resolving "+batch.size()+" artifacts");
+			List<ArtifactResult> results = resolve(system, session, batch);
+			retry(system, session, batch, results);
+			for(int i = 0; i < results.size(); i++) {
+				if(isNotFound(results.get(i))) {
+					recordMissing(negativeKey(batch.get(i).getArtifact().toString()), batch.get(i).getRepositories());
+				}
+			}
+			for(int i = 0; i < owned.size() && i < results.size(); i++) {
+				owned.get(i).complete(results.get(i));
+			}
+		} catch (RuntimeException e) {
+			for(SingleFlight<String, ArtifactResult>.Flight flight : owned) {
+				flight.fail(e);
+			}
+			throw e;
+		} finally {
+			// never leave a claimed artifact behind, concurrent callers would wait forever
+			for(SingleFlight<String, ArtifactResult>.Flight flight : owned) {
+				flight.fail(new IllegalStateException("artifact resolution aborted"));
+			}
+		}
+	}
+
+	private static List<ArtifactResult> resolve(RepositorySystem system, RepositorySystemSession session, List<ArtifactRequest> batch) {
+		try {
+			return system.resolveArtifacts(session, batch);
+		} catch (ArtifactResolutionException e) {
+			// the results of the successful requests are still there
+			return e.getResults();
+		}
+	}
+
+	/**
+	 * Resolves the artifacts which failed because of a broken transfer again, as long as one of the
+	 * failed repositories allows another retry. The wait before a retry doubles with every attempt.
+	 * A partially downloaded file is kept by the connector and resumed with a range request.
+	 */
+	private void retry(RepositorySystem system, RepositorySystemSession session, List<ArtifactRequest> batch, List<ArtifactResult> results) {
+		for(int attempt = 1; ; attempt++) {
+			List<Integer> failed = new ArrayList<Integer>();
+			long backoff = 0;
+			for(int i = 0; i < results.size(); i++) {
+				long delay = getRetryDelay(results.get(i), attempt);
+				if(delay >= 0) {
+					failed.add(i);
+					backoff = Math.max(backoff, delay);
+				}
+			}
+			if(failed.isEmpty()) {
+				return;
+			}
+			logger.println("transfer of "+failed.size()+" artifacts failed, retry "+attempt+" in "+backoff+" ms");
+			try {
+				Thread.sleep(backoff);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+			List<ArtifactRequest> again = new ArrayList<ArtifactRequest>(failed.size());
+			for(int i : failed) {
+				again.add(batch.get(i));
+			}
+			List<ArtifactResult> retried = resolve(system, session, again);
+			for(int i = 0; i < failed.size() && i < retried.size(); i++) {
+				results.set(failed.get(i), retried.get(i));
+			}
+		}
+	}
+
+	/**
+	 * @return milliseconds to wait before the given retry of the artifact, <code>-1</code> if it
+	 *         must not be retried because it is resolved, missing or out of retries
+	 */
+	private long getRetryDelay(ArtifactResult result, int attempt) {
+		if(result.isResolved()) {
+			return -1;
+		}
+		long delay = -1;
+		for(Exception e : result.getExceptions()) {
+			if(!(e instanceof ArtifactTransferException) || e instanceof ArtifactNotFoundException) {
+				continue;
+			}
+			RemoteRepository repository = ((ArtifactTransferException) e).getRepository();
+			RepositoryConfig conf = repository == null ? null : getRepositoryConfig(repository.getId());
+			if(conf != null && attempt <= conf.getRetries()) {
+				delay = Math.max(delay, Math.min(MAX_RETRY_BACKOFF, (long) conf.getRetryBackoff() << Math.min(attempt - 1, 20)));
+			}
+		}
+		return delay;
+	}
+
+	RepositoryConfig getRepositoryConfig(String id) {
+		for(RepositoryConfig conf : repositoryConfigs) {
+			if(conf.getId().equals(id)) {
+				return conf;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Waits for the resolution of an artifact and copies it to the target files of all entries of
+	 * the group. Artifacts without a flight are streamed into the first target and copied from there
+	 * to the others. With an extractor, archives are extracted into the target directories instead.
+	 * An artifact evicted from the local repository before its directory got pinned is resolved again.
+	 * 
+	 * @return the number of bytes copied
+	 */
+	private long deliverArtifact(RepositorySystem system, RepositorySystemSession session, List<RemoteRepository> remotes, List<ArtifactConfig> group,
+			SingleFlight<String, ArtifactResult>.Flight flight, DirectDownload direct, ArchiveExtractor extractor, MetricsTransferListener metrics) throws ArtifactResolutionException, IOException {
+		ArtifactConfig ac = group.get(0);
+		if(extractor != null && !ArchiveExtractor.isSupported(ac.getExtension())) {
+			extractor = null;
+		}
+		if(flight == null) {
+			long size = streamArtifact(ac, direct, metrics);
+			long delivered = deliverToTargets(group, new File(ac.getTargetFileName()), true, extractor);
+			return extractor == null ? size + delivered : delivered;
+		}
+		ArtifactResult result;
+		try {
+			result = flight.get();
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException("interrupted while resolving "+ac);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IOException(cause.getMessage(), cause);
+		}
+		if(!result.isResolved()) {
+			throw new ArtifactResolutionException(Collections.singletonList(result));
+		}
+		File fIn = result.getArtifact().getFile(); 
+		metrics.recordResolution(result);
+		if(isolated) {
+			return deliverToTargets(group, fIn, false, extractor);
+		}
+		// keep the evictor away from the directory the version was resolved to until it is delivered
+		for(int attempt = 1; ; attempt++) {
+			File dir = fIn.getParentFile();
+			pin(dir);
+			try {
+				if(fIn.isFile()) {
+					LocalRepositoryEvictor.get().touch(dir);
+					return deliverToTargets(group, fIn, false, extractor);
+				}
+			} finally {
+				LocalRepositoryEvictor.get().unpin(dir);
+			}
+			// evicted between its resolution and the pin
+			if(attempt > MAX_EVICTION_RETRIES) {
+				throw new IOException("artifact "+fIn.getAbsolutePath()+" was evicted from the local repository "+attempt+" times before it was delivered");
+			}
+			logger.println("artifact "+fIn.getAbsolutePath()+" was evicted before it was delivered, resolving it again");
+			result = system.resolveArtifact(session, new ArtifactRequest(result.getRequest().getArtifact(), remotes, null));
+			fIn = result.getArtifact().getFile();
+		}
+	}
+
+	private static void pin(File dir) throws InterruptedIOException {
+		try {
+			LocalRepositoryEvictor.get().pin(dir);
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException("interrupted while waiting for the eviction of "+dir.getAbsolutePath());
+		}
+	}
+
+	/**
+	 * Copies the artifact to the target files of the group, or extracts it into their directories
+	 * if an extractor is given.
+	 * 
+	 * @param streamed <code>true</code> if the artifact was streamed into the target of the first entry
+	 * @return the number of bytes copied or extracted
+	 */
+	private long deliverToTargets(List<ArtifactConfig> group, File fIn, boolean streamed, ArchiveExtractor extractor) throws IOException {
+		long size = 0;
+		if(extractor != null) {
+			for(ArtifactConfig target : group) {
+				size += unpack(extractor, fIn, target);
+			}
+			if(streamed && !fIn.delete()) {
+				// the archive was streamed into the first target only to be extracted
+				logger.println("unable to delete "+fIn.getAbsolutePath());
+			}
+			return size;
+		}
+		Set<File> delivered = new HashSet<File>();
+		if(streamed) {
+			// streamed there already
+			delivered.add(fIn.getAbsoluteFile());
+		}
+		for(ArtifactConfig target : group) {
+			File fOut = new File(target.getTargetFileName()).getAbsoluteFile();
+			if(delivered.add(fOut)) {
+				size += deliver(fIn, fOut);
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Extracts a resolved archive into the directory of its target file, a target ending with a
+	 * separator is the directory itself.
+	 * 
+	 * @return the number of bytes extracted
+	 */
+	private long unpack(ArchiveExtractor extractor, File archive, ArtifactConfig ac) throws IOException {
+		String target = ac.getTargetFileName();
+		File directory = target.endsWith("/") || target.endsWith(File.separator) ? new File(target) : new File(target).getAbsoluteFile().getParentFile();
+		long start = System.currentTimeMillis();
+		long size = extractor.extract(archive, ac.getExtension(), directory);
+		long duration = Math.max(1, System.currentTimeMillis() - start);
+		logger.println("unpack artifact: "+archive.getAbsolutePath()+" -> "+directory.getAbsolutePath()
+				+" ("+size+" bytes in "+duration+" ms, "+(size * 1000 / 1024 / duration)+" KB/s)");
+		return size;
+	}
+
+	/**
+	 * Streams an artifact straight into its target file, the local repository is not involved.
+	 * 
+	 * @return the number of bytes streamed
+	 */
+	private long streamArtifact(ArtifactConfig ac, DirectDownload direct, MetricsTransferListener metrics) throws ArtifactResolutionException, IOException {
+		Artifact artifact = new DefaultArtifact(ac.getGroupId(),ac.getArtifactId(),ac.getClassifier(),ac.getExtension(),ac.getVersion());
+		String missingKey = negativeKey(artifact.toString());
+		if(NegativeResultCache.get().isMissing(missingKey)) {
+			throw new IOException("artifact "+artifact+" was not found within the last "+NegativeResultCache.get().getTtlSeconds()+" seconds");
+		}
+		ArtifactResult result = direct.download(ac, this);
+		if(!result.isResolved()) {
+			if(isNotFound(result)) {
+				recordMissing(missingKey, result.getRequest().getRepositories());
+			}
+			throw new ArtifactResolutionException(Collections.singletonList(result));
+		}
+		metrics.recordResolution(result);
+		return result.getArtifact().getFile().length();
+	}
+
+	/**
+	 * Delivers a resolved file to its target using the configured {@link DeliveryStrategy}.
+	 * 
+	 * @return the number of bytes delivered
+	 */
+	private long deliver(File fIn, File fOut) throws IOException {
+		long start = System.currentTimeMillis();
+		DeliveryStrategy used = deliveryStrategy.deliverWithFallback(fIn.toPath(), fOut.toPath());
+		long duration = Math.max(1, System.currentTimeMillis() - start);
+		long size = fIn.length();
+		logger.println("copy artifact: "+fIn.getAbsolutePath()+" -> "+fOut.getAbsolutePath()
+				+" ("+used+", "+size+" bytes in "+duration+" ms, "+(size * 1000 / 1024 / duration)+" KB/s)");
+		return size;
+	}
+
+	/**
+	 * Concurrent requests for the same artifact from the same remotes into the same local repository
+	 * are coalesced into a single transfer. The key is built from the configured repositories in a
+	 * fixed order, builds which see a different health based order still share the transfer.
+	 */
+	private String resolutionKey(Artifact artifact) {
+		Set<String> remotes = new TreeSet<String>();
+		for(RepositoryConfig conf : repositoryConfigs) {
+			remotes.add(conf.getId()+"@"+conf.getUrl());
+		}
+		StringBuilder key = new StringBuilder(localRepository.getAbsolutePath());
+		for(String remote : remotes) {
+			key.append('|').append(remote);
+		}
+		return key.append('|').append(artifact).toString();
+	}
+
+	/**
+	 * Missing results do not depend on the local repository, only on the repositories asked.
+	 */
+	private String negativeKey(String coordinates) {
+		StringBuilder key = new StringBuilder();
+		for(RepositoryConfig conf : repositoryConfigs) {
+			key.append(conf.getId()).append('@').append(conf.getUrl()).append('|');
+		}
+		return key.append(coordinates).toString();
+	}
+
+	/**
+	 * @return <code>true</code> if every repository answered that the artifact does not exist
+	 */
+	private static boolean isNotFound(ArtifactResult result) {
+		if(result.isResolved() || result.getExceptions().isEmpty()) {
+			return false;
+		}
+		for(Exception e : result.getExceptions()) {
+			if(!(e instanceof ArtifactNotFoundException)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void logError(ArtifactConfig ac, Throwable e) {
+		logger.println("error downloading "+ac+": "+e.getMessage());
+		e.printStackTrace(logger);
+	}
+
 }
@@ -0,0 +1,189 @@
+package org.jvnet.hudson.plugins.artifactdownloader.aether;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.aether.repository.RemoteRepository;
+
+/**
+ * Tracks response latency and failures per repository id in this JVM, and orders the repositories
+ * of a request so that the fastest healthy one is asked first. A repository failing several times
+ * in a row is considered down for a while and only used if no healthy repository is left.
+ */
+public final class RepositoryHealth {
+
+	private static final RepositoryHealth INSTANCE = new RepositoryHealth();
+
+	/** weight of the latest sample in the moving latency average */
+	private static final double ALPHA = 0.3;
+	private static final int FAILURE_THRESHOLD = 3;
+	private static final long DOWN_MILLIS = TimeUnit.SECONDS.toMillis(60);
+
+	private final ConcurrentMap<String, Stats> stats = new ConcurrentHashMap<String, Stats>();
+
+	private RepositoryHealth() {
+	}
+
+	public static RepositoryHealth get() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Records a response of the repository, received after the given time.
+	 */
+	public void recordResponse(String repoId, long latencyMillis) {
+		stats(repoId).response(latencyMillis);
+	}
+
+	/**
+	 * Records a failed request (connection refused, timeout, server error, ...).
+	 */
+	public void recordFailure(String repoId) {
+		stats(repoId).failure();
+	}
+
+	/**
+	 * @return the average response latency in milliseconds, <code>-1</code> if unknown
+	 */
+	public long getLatency(String repoId) {
+		Stats s = stats.get(repoId);
+		return s == null ? -1 : s.getLatency();
+	}
+
+	/**
+	 * @return the share of failed requests, between 0 and 1
+	 */
+	public double getErrorRate(String repoId) {
+		Stats s = stats.get(repoId);
+		return s == null ? 0 : s.getErrorRate();
+	}
+
+	/**
+	 * @return <code>true</code> if the repository failed repeatedly and is skipped for the time being
+	 */
+	public boolean isDown(String repoId) {
+		Stats s = stats.get(repoId);
+		return s != null && s.isDown(System.currentTimeMillis());
+	}
+
+	/**
+	 * Orders the repositories by their expected time to a successful response: the average latency
+	 * divided by the share of successful requests. Repositories without samples come last in their
+	 * configured order, so do repositories with equal scores. Repositories which are down are dropped,
+	 * unless all of them are down.
+	 */
+	public List<RemoteRepository> order(List<RemoteRepository> repositories) {
+		List<RemoteRepository> healthy = new ArrayList<RemoteRepository>(repositories.size());
+		for (RemoteRepository rr : repositories) {
+			if (!isDown(rr.getId())) {
+				healthy.add(rr);
+			}
+		}
+		List<RemoteRepository> candidates = healthy.isEmpty() ? repositories : healthy;
+		// take the scores once, samples recorded while sorting must not change the order
+		List<Ranked> ranked = new ArrayList<Ranked>(candidates.size());
+		for (int i = 0; i < candidates.size(); i++) {
+			ranked.add(new Ranked(candidates.get(i), getScore(candidates.get(i).getId()), i));
+		}
+		Collections.sort(ranked, new Comparator<Ranked>() {
+			@Override
+			public int compare(Ranked a, Ranked b) {
+				int byScore = Double.compare(a.score, b.score);
+				return byScore != 0 ? byScore : a.index - b.index;
+			}
+		});
+		List<RemoteRepository> out = new ArrayList<RemoteRepository>(ranked.size());
+		for (Ranked r : ranked) {
+			out.add(r.repository);
+		}
+		return out;
+	}
+
+	/**
+	 * @return the expected time to a successful response in milliseconds, infinite if unknown
+	 */
+	private double getScore(String repoId) {
+		Stats s = stats.get(repoId);
+		return s == null ? Double.POSITIVE_INFINITY : s.getScore();
+	}
+
+	/**
+	 * Forgets everything recorded so far.
+	 */
+	public void reset() {
+		stats.clear();
+	}
+
+	private Stats stats(String repoId) {
+		Stats s = stats.get(repoId);
+		if (s == null) {
+			Stats created = new Stats();
+			s = stats.putIfAbsent(repoId, created);
+			if (s == null) {
+				s = created;
+			}
+		}
+		return s;
+	}
+
+	private static final class Ranked {
+		private final RemoteRepository repository;
+		private final double score;
+		private final int index;
+
+		Ranked(RemoteRepository repository, double score, int index) {
+			this.repository = repository;
+			this.score = score;
+			this.index = index;
+		}
+	}
+
+	private static final class Stats {
+		private double latency = -1;
+		private long responses;
+		private long failures;
+		private int consecutiveFailures;
+		private long downUntil;
+
+		synchronized void response(long latencyMillis) {
+			latency = latency < 0 ? latencyMillis : ALPHA * latencyMillis + (1 - ALPHA) * latency;
+			responses++;
+			consecutiveFailures = 0;
+			downUntil = 0;
+		}
+
+		synchronized void failure() {
+			failures++;
+			consecutiveFailures++;
+			if (consecutiveFailures >= FAILURE_THRESHOLD) {
+				downUntil = System.currentTimeMillis() + DOWN_MILLIS;
+			}
+		}
+
+		synchronized long getLatency() {
+			return Math.round(latency);
+		}
+
+		synchronized double getErrorRate() {
+			long total = responses + failures;
+			return total == 0 ? 0 : (double) failures / total;
+		}
+
+		synchronized double getScore() {
+			double successRate = 1 - getErrorRate();
+			if (latency < 0 || successRate <= 0) {
+				return Double.POSITIVE_INFINITY;
+			}
+			return latency / successRate;
+		}
+
+		synchronized boolean isDown(long now) {
+			return now < downUntil;
+		}
+	}
+}
@@ -0,0 +1,24 @@
+package org.jvnet.hudson.plugins.artifactdownloader.aether;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.eclipse.aether.version.Version;
+import org.jvnet.hudson.plugins.artifactdownloader.RepositoryConfig;
+
+/**
+ * Lists versions through the search API of a repository manager, which is used instead of the
+ * <code>maven-metadata.xml</code> for repositories flagged as {@link RepositoryConfig#isRepositoryManager()}.
+ */
+public interface RepositoryManagerBackend {
+
+	/**
+	 * @param repo the repository to query
+	 * @param groupId the group id
+	 * @param artifactId the artifact id
+	 * @param filter the filter the versions have to pass, its limit applies to the accepted versions
+	 * @return the accepted versions, newest first
+	 * @throws IOException if the repository manager can not answer the query, e.g. because it has no such endpoint
+	 */
+	List<Version> listVersions(RepositoryConfig repo, String groupId, String artifactId, VersionFilter filter) throws IOException;
+}
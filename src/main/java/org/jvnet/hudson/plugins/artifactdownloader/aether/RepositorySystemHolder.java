@@ -0,0 +1,130 @@
+package org.jvnet.hudson.plugins.artifactdownloader.aether;
+
+import java.io.File;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.maven.repository.internal.DefaultVersionResolver;
+import org.apache.maven.repository.internal.MavenRepositorySystemUtils;
+import org.eclipse.aether.DefaultRepositoryCache;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.DefaultSessionData;
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.connector.basic.BasicRepositoryConnectorFactory;
+import org.eclipse.aether.impl.DefaultServiceLocator;
+import org.eclipse.aether.impl.VersionResolver;
+import org.eclipse.aether.repository.LocalRepository;
+import org.eclipse.aether.repository.LocalRepositoryManager;
+import org.eclipse.aether.repository.RepositoryPolicy;
+import org.eclipse.aether.spi.connector.RepositoryConnectorFactory;
+import org.eclipse.aether.spi.connector.transport.TransporterFactory;
+import org.eclipse.aether.transport.file.FileTransporterFactory;
+import org.eclipse.aether.transport.http.HttpTransporterFactory;
+
+/**
+ * Holds the {@link RepositorySystem} and its service graph for the lifetime of the plugin.
+ * The repository system is thread safe, all {@link RepositoryConnector}s share one instance and
+ * derive their sessions from a common template, which also shares the pooled HTTP connections. Call {@link #invalidate()} whenever the repository
+ * configuration changes, the next caller will then get a freshly created holder.
+ */
+public final class RepositorySystemHolder {
+
+	private static final Logger log = Logger.getLogger(RepositorySystemHolder.class.getName());
+
+	private static RepositorySystemHolder instance;
+
+	private final DefaultServiceLocator locator;
+	private final RepositorySystem system;
+	private final DefaultRepositorySystemSession template;
+	private final ConcurrentMap<File, LocalRepositoryManager> localRepositoryManagers = new ConcurrentHashMap<File, LocalRepositoryManager>();
+
+	private RepositorySystemHolder() {
+		locator = MavenRepositorySystemUtils.newServiceLocator();
+		locator.addService(RepositoryConnectorFactory.class, BasicRepositoryConnectorFactory.class);
+		locator.addService(TransporterFactory.class, FileTransporterFactory.class);
+		locator.addService(TransporterFactory.class, HttpTransporterFactory.class);
+		locator.addService(VersionResolver.class, DefaultVersionResolver.class);
+		locator.setErrorHandler(new DefaultServiceLocator.ErrorHandler() {
+			@Override
+			public void serviceCreationFailed(Class<?> type, Class<?> impl, Throwable exception) {
+				log.log(Level.SEVERE, "error creating repository service " + type.getName() + " (" + impl.getName() + ")", exception);
+			}
+		});
+		system = locator.getService(RepositorySystem.class);
+		if(system==null) {
+			throw new RuntimeException("unable to create a repository system");
+		}
+
+		template = MavenRepositorySystemUtils.newSession();
+		// the local repository may outlive a single call, make sure metadata
+		// (version lists, snapshots, RELEASE/LATEST) is still checked every time
+		template.setUpdatePolicy(RepositoryPolicy.UPDATE_POLICY_ALWAYS);
+		// the http transporter keeps its pooled keep-alive connections in the repository cache, a cache
+		// shared by all sessions lets builds reuse the connections (and TLS sessions) of each other;
+		// resolved versions must not be taken from that cache though, they have to be checked every time
+		template.setCache(new DefaultRepositoryCache());
+		template.setConfigProperty("aether.versionResolver.noCache", true);
+		template.setReadOnly();
+	}
+
+	/**
+	 * @return the shared holder, created on first access or after {@link #invalidate()}
+	 */
+	public static synchronized RepositorySystemHolder get() {
+		if(instance == null) {
+			log.fine("creating repository system");
+			instance = new RepositorySystemHolder();
+		}
+		return instance;
+	}
+
+	/**
+	 * Drops the shared holder. Calls already running keep using the old instance.
+	 */
+	public static synchronized void invalidate() {
+		log.fine("invalidating repository system");
+		instance = null;
+	}
+
+	public RepositorySystem getSystem() {
+		return system;
+	}
+
+	/**
+	 * @return a service of the repository system's service graph
+	 */
+	public <T> T getService(Class<T> type) {
+		return locator.getService(type);
+	}
+
+	/**
+	 * Creates a new session from the shared template, working on the given local repository.
+	 *
+	 * @param localRepository the local repository directory
+	 * @param shared <code>true</code> if the local repository is shared between calls, its
+	 *        repository manager is kept and reused then
+	 */
+	public DefaultRepositorySystemSession newSession(File localRepository, boolean shared) {
+		DefaultRepositorySystemSession session = new DefaultRepositorySystemSession(template);
+		// the copy shares the template's session data, where the update check manager remembers the
+		// metadata it checked already; every session has to check again
+		session.setData(new DefaultSessionData());
+		LocalRepositoryManager lrm = null;
+		if(shared) {
+			lrm = localRepositoryManagers.get(localRepository);
+		}
+		if(lrm == null) {
+			lrm = system.newLocalRepositoryManager(session, new LocalRepository(localRepository));
+			if(shared) {
+				LocalRepositoryManager existing = localRepositoryManagers.putIfAbsent(localRepository, lrm);
+				if(existing != null) {
+					lrm = existing;
+				}
+			}
+		}
+		session.setLocalRepositoryManager(lrm);
+		return session;
+	}
+}
@@ -0,0 +1,90 @@
+package org.jvnet.hudson.plugins.artifactdownloader.aether;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Coalesces concurrent calls for the same key: the first caller owns the call and executes it,
+ * callers asking for the same key while it is running wait for it and get the same result (or failure).
+ * Nothing is remembered once a call completed, a failed call is therefore not handed to later callers.
+ *
+ * @param <K> the key type
+ * @param <V> the result type
+ */
+final class SingleFlight<K, V> {
+
+	private final ConcurrentMap<K, CompletableFuture<V>> calls = new ConcurrentHashMap<K, CompletableFuture<V>>();
+
+	/**
+	 * Joins the call for the given key. If no call is running yet, the returned flight is owned
+	 * by the caller, who must {@link Flight#complete(Object) complete} or {@link Flight#fail(Throwable) fail} it.
+	 */
+	Flight join(K key) {
+		CompletableFuture<V> future = new CompletableFuture<V>();
+		CompletableFuture<V> running = calls.putIfAbsent(key, future);
+		if (running != null) {
+			return new Flight(key, running, false);
+		}
+		return new Flight(key, future, true);
+	}
+
+	/**
+	 * @return the number of calls currently running
+	 */
+	int size() {
+		return calls.size();
+	}
+
+	/**
+	 * A call joined by {@link SingleFlight#join(Object)}.
+	 */
+	final class Flight {
+		private final K key;
+		private final CompletableFuture<V> future;
+		private final boolean owner;
+
+		private Flight(K key, CompletableFuture<V> future, boolean owner) {
+			this.key = key;
+			this.future = future;
+			this.owner = owner;
+		}
+
+		/**
+		 * @return <code>true</code> if the caller started this call and has to complete it
+		 */
+		boolean isOwner() {
+			return owner;
+		}
+
+		/**
+		 * Completes an owned call, does nothing if the call was completed already.
+		 */
+		void complete(V value) {
+			if (owner) {
+				calls.remove(key, future);
+				future.complete(value);
+			}
+		}
+
+		/**
+		 * Fails an owned call, does nothing if the call was completed already.
+		 */
+		void fail(Throwable failure) {
+			if (owner) {
+				calls.remove(key, future);
+				future.completeExceptionally(failure);
+			}
+		}
+
+		/**
+		 * Waits for the call to complete.
+		 *
+		 * @throws ExecutionException if the call failed, the cause is the failure of the call
+		 */
+		V get() throws ExecutionException, InterruptedException {
+			return future.get();
+		}
+	}
+}
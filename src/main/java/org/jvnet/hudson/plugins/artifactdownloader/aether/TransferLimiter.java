@@ -0,0 +1,127 @@
+package org.jvnet.hudson.plugins.artifactdownloader.aether;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.jvnet.hudson.plugins.artifactdownloader.RepositoryConfig;
+
+/**
+ * Limits the transfers of this JVM per repository id, across all builds: a fair queue in front
+ * of a maximum number of transfers in flight and an optional bandwidth ceiling shared by all
+ * transfers of the repository.
+ */
+public final class TransferLimiter {
+
+	private static final TransferLimiter INSTANCE = new TransferLimiter();
+
+	private final ConcurrentMap<String, Limit> limits = new ConcurrentHashMap<String, Limit>();
+
+	private TransferLimiter() {
+	}
+
+	public static TransferLimiter get() {
+		return INSTANCE;
+	}
+
+	/**
+	 * @return the limit of the repository, following changes of its configuration
+	 */
+	public Limit getLimit(RepositoryConfig conf) {
+		Limit limit = limits.get(conf.getId());
+		while (limit == null || !limit.matches(conf)) {
+			Limit created = new Limit(conf.getMaxTransfers(), conf.getBandwidthLimit());
+			if (limit == null ? limits.putIfAbsent(conf.getId(), created) == null : limits.replace(conf.getId(), limit, created)) {
+				return created;
+			}
+			limit = limits.get(conf.getId());
+		}
+		return limit;
+	}
+
+	/**
+	 * @return the number of transfers waiting for the given repository
+	 */
+	public int getQueueLength(String repoId) {
+		Limit limit = limits.get(repoId);
+		return limit == null ? 0 : limit.getQueueLength();
+	}
+
+	/**
+	 * The transfer limit of a repository. Transfers which started under a limit release their
+	 * slot to it even if the configuration changed in the meantime.
+	 */
+	public static final class Limit {
+		private final int maxTransfers;
+		private final int kbPerSecond;
+		private final Semaphore slots;
+		private final long bytesPerSecond;
+		private double tokens;
+		private long refilled = System.nanoTime();
+
+		Limit(int maxTransfers, int kbPerSecond) {
+			this.maxTransfers = maxTransfers;
+			this.kbPerSecond = kbPerSecond;
+			this.slots = maxTransfers > 0 ? new Semaphore(maxTransfers, true) : null;
+			this.bytesPerSecond = kbPerSecond * 1024L;
+			this.tokens = bytesPerSecond;
+		}
+
+		boolean matches(RepositoryConfig conf) {
+			return maxTransfers == conf.getMaxTransfers() && kbPerSecond == conf.getBandwidthLimit();
+		}
+
+		/**
+		 * Waits for a free transfer slot, in the order of arrival.
+		 *
+		 * @return the milliseconds waited
+		 */
+		long acquire() throws InterruptedException {
+			if (slots == null) {
+				return 0;
+			}
+			// tryAcquire() without a timeout would barge past queued waiters even on a fair semaphore
+			if (slots.tryAcquire(0, TimeUnit.NANOSECONDS)) {
+				return 0;
+			}
+			long start = System.nanoTime();
+			slots.acquire();
+			return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		}
+
+		void release() {
+			if (slots != null) {
+				slots.release();
+			}
+		}
+
+		/**
+		 * Takes the given number of bytes from the bandwidth budget, sleeping as long as the
+		 * budget is overdrawn.
+		 *
+		 * @return the milliseconds slept
+		 */
+		long throttle(int bytes) throws InterruptedException {
+			if (bytesPerSecond <= 0) {
+				return 0;
+			}
+			long sleep;
+			synchronized (this) {
+				long now = System.nanoTime();
+				tokens = Math.min(bytesPerSecond, tokens + (now - refilled) * bytesPerSecond / 1e9);
+				refilled = now;
+				tokens -= bytes;
+				sleep = tokens < 0 ? (long) (-tokens * 1000 / bytesPerSecond) : 0;
+			}
+			if (sleep > 0) {
+				Thread.sleep(sleep);
+			}
+			return sleep;
+		}
+
+		int getQueueLength() {
+			return slots == null ? 0 : slots.getQueueLength();
+		}
+	}
+}
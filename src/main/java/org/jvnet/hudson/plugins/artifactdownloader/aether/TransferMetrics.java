@@ -0,0 +1,166 @@
+package org.jvnet.hudson.plugins.artifactdownloader.aether;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Aggregates the transfers of this JVM per repository id: counters for transfers, bytes, failures
+ * and corrupted checksums, histograms for the time to first byte, the throughput and the time
+ * spent waiting for the {@link TransferLimiter}. Resolutions answered by the local repository are
+ * counted as hits, the others as fetches of the repository which served them.
+ */
+public final class TransferMetrics {
+
+	private static final TransferMetrics INSTANCE = new TransferMetrics();
+
+	private final ConcurrentMap<String, RepositoryMetrics> repositories = new ConcurrentHashMap<String, RepositoryMetrics>();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong fetches = new AtomicLong();
+
+	private TransferMetrics() {
+	}
+
+	public static TransferMetrics get() {
+		return INSTANCE;
+	}
+
+	public RepositoryMetrics getRepository(String repoId) {
+		RepositoryMetrics m = repositories.get(repoId);
+		if (m == null) {
+			RepositoryMetrics created = new RepositoryMetrics();
+			m = repositories.putIfAbsent(repoId, created);
+			if (m == null) {
+				m = created;
+			}
+		}
+		return m;
+	}
+
+	/**
+	 * @return the metrics of all repositories with transfers, sorted by id
+	 */
+	public Map<String, RepositoryMetrics> getRepositories() {
+		return new TreeMap<String, RepositoryMetrics>(repositories);
+	}
+
+	/**
+	 * Records a resolved artifact.
+	 *
+	 * @param repoId the repository which served the artifact, <code>null</code> if it was taken from the local repository
+	 */
+	public void recordResolution(String repoId) {
+		if (repoId == null) {
+			hits.incrementAndGet();
+		} else {
+			fetches.incrementAndGet();
+			getRepository(repoId).fetches.incrementAndGet();
+		}
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getFetches() {
+		return fetches.get();
+	}
+
+	/**
+	 * @return the share of artifacts served from the local repository, between 0 and 1
+	 */
+	public double getHitRate() {
+		long h = hits.get();
+		long total = h + fetches.get();
+		return total == 0 ? 0 : (double) h / total;
+	}
+
+	/**
+	 * Forgets everything recorded so far.
+	 */
+	public void reset() {
+		repositories.clear();
+		hits.set(0);
+		fetches.set(0);
+	}
+
+	/**
+	 * The metrics of a single repository.
+	 */
+	public static final class RepositoryMetrics {
+		private final AtomicLong transfers = new AtomicLong();
+		private final AtomicLong bytes = new AtomicLong();
+		private final AtomicLong failures = new AtomicLong();
+		private final AtomicLong notFound = new AtomicLong();
+		private final AtomicLong corrupted = new AtomicLong();
+		private final AtomicLong fetches = new AtomicLong();
+		/** milliseconds from initiating a transfer to the first byte */
+		private final Histogram timeToFirstByte = new Histogram(10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000);
+		/** KB/s of successful transfers with content */
+		private final Histogram throughput = new Histogram(64, 256, 1024, 4096, 16384, 65536, 262144);
+		/** milliseconds a transfer waited for a slot of the {@link TransferLimiter} */
+		private final Histogram queueWait = new Histogram(0, 10, 100, 1000, 10000, 60000);
+
+		void recordTransfer(long transferredBytes, long millis) {
+			transfers.incrementAndGet();
+			bytes.addAndGet(transferredBytes);
+			if (transferredBytes > 0) {
+				throughput.record(transferredBytes * 1000 / 1024 / Math.max(1, millis));
+			}
+		}
+
+		void recordTimeToFirstByte(long millis) {
+			timeToFirstByte.record(millis);
+		}
+
+		void recordQueueWait(long millis) {
+			queueWait.record(millis);
+		}
+
+		void recordFailure(boolean missing) {
+			(missing ? notFound : failures).incrementAndGet();
+		}
+
+		void recordCorrupted() {
+			corrupted.incrementAndGet();
+		}
+
+		public long getTransfers() {
+			return transfers.get();
+		}
+
+		public long getBytes() {
+			return bytes.get();
+		}
+
+		public long getFailures() {
+			return failures.get();
+		}
+
+		public long getNotFound() {
+			return notFound.get();
+		}
+
+		public long getCorrupted() {
+			return corrupted.get();
+		}
+
+		public long getFetches() {
+			return fetches.get();
+		}
+
+		public Histogram getTimeToFirstByte() {
+			return timeToFirstByte;
+		}
+
+		public Histogram getThroughput() {
+			return throughput;
+		}
+
+		public Histogram getQueueWait() {
+			return queueWait;
+		}
+	}
+}
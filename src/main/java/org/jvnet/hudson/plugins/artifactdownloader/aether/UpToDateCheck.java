@@ -0,0 +1,158 @@
+package org.jvnet.hudson.plugins.artifactdownloader.aether;
+
+import hudson.Util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.repository.RepositoryPolicy;
+import org.eclipse.aether.resolution.ArtifactRequest;
+import org.eclipse.aether.resolution.ArtifactResolutionException;
+import org.eclipse.aether.resolution.ArtifactResult;
+import org.jvnet.hudson.plugins.artifactdownloader.ArtifactConfig;
+
+/**
+ * Finds the artifacts whose target file already holds the content published in the repository.
+ * Only the small checksum files published next to the artifacts (SHA-1, MD5 as fallback) are
+ * resolved, the artifacts themselves are not transferred.
+ */
+final class UpToDateCheck {
+
+	private static final String[][] CHECKSUMS = { { "sha1", "SHA-1" }, { "md5", "MD5" } };
+
+	private final RepositorySystem system;
+	private final RepositorySystemSession session;
+	private final List<RemoteRepository> remotes;
+	private final PrintStream logger;
+
+	UpToDateCheck(RepositorySystem system, RepositorySystemSession session, List<RemoteRepository> remotes, PrintStream logger) {
+		this.system = system;
+		this.session = session;
+		this.logger = logger;
+		// checksum files have no checksums of their own
+		this.remotes = new ArrayList<RemoteRepository>(remotes.size());
+		for(RemoteRepository rr : remotes) {
+			RepositoryPolicy policy = new RepositoryPolicy(true, RepositoryPolicy.UPDATE_POLICY_ALWAYS, RepositoryPolicy.CHECKSUM_POLICY_IGNORE);
+			this.remotes.add(new RemoteRepository.Builder(rr).setReleasePolicy(policy).setSnapshotPolicy(policy).build());
+		}
+	}
+
+	/**
+	 * @return the artifacts which still have to be downloaded, i.e. the ones whose target does not
+	 *         exist, differs from the published checksum or has no published checksum at all
+	 */
+	List<ArtifactConfig> filter(List<ArtifactConfig> artifacts) {
+		List<ArtifactConfig> out = new ArrayList<ArtifactConfig>(artifacts.size());
+		List<ArtifactConfig> existing = new ArrayList<ArtifactConfig>();
+		for(ArtifactConfig ac : artifacts) {
+			if(new File(ac.getTargetFileName()).isFile()) {
+				existing.add(ac);
+			} else {
+				out.add(ac);
+			}
+		}
+		if(existing.isEmpty()) {
+			return out;
+		}
+
+		long saved = 0;
+		int skipped = 0;
+		List<ArtifactConfig> unverified = existing;
+		for(String[] checksum : CHECKSUMS) {
+			if(unverified.isEmpty()) {
+				break;
+			}
+			List<ArtifactResult> results = resolveChecksums(unverified, checksum[0]);
+			List<ArtifactConfig> next = new ArrayList<ArtifactConfig>();
+			for(int i = 0; i < unverified.size(); i++) {
+				ArtifactConfig ac = unverified.get(i);
+				ArtifactResult result = i < results.size() ? results.get(i) : null;
+				if(result == null || !result.isResolved()) {
+					next.add(ac);
+					continue;
+				}
+				File target = new File(ac.getTargetFileName());
+				try {
+					String published = readChecksum(result.getArtifact().getFile());
+					String actual = digest(target, checksum[1]);
+					if(published.equalsIgnoreCase(actual)) {
+						logger.println("artifact is up to date, skipping: "+ac+" ("+checksum[1]+" "+actual+")");
+						saved += target.length();
+						skipped++;
+					} else {
+						out.add(ac);
+					}
+				} catch (IOException e) {
+					logger.println("unable to verify "+target.getAbsolutePath()+": "+e.getMessage());
+					out.add(ac);
+				}
+			}
+			unverified = next;
+		}
+		out.addAll(unverified);
+		if(skipped > 0) {
+			logger.println("skipped "+skipped+" up to date artifacts, saved "+saved+" bytes");
+		}
+		return out;
+	}
+
+	private List<ArtifactResult> resolveChecksums(List<ArtifactConfig> artifacts, String checksumExtension) {
+		List<ArtifactRequest> requests = new ArrayList<ArtifactRequest>(artifacts.size());
+		for(ArtifactConfig ac : artifacts) {
+			Artifact checksum = new DefaultArtifact(ac.getGroupId(), ac.getArtifactId(), ac.getClassifier(),
+					ac.getExtension()+"."+checksumExtension, ac.getVersion());
+			requests.add(new ArtifactRequest(checksum, remotes, null));
+		}
+		try {
+			return system.resolveArtifacts(session, requests);
+		} catch (ArtifactResolutionException e) {
+			return e.getResults();
+		}
+	}
+
+	/**
+	 * Reads a checksum file, which may hold the file name after the checksum.
+	 */
+	private static String readChecksum(File file) throws IOException {
+		String content = StringUtils.trimToEmpty(FileUtils.readFileToString(file, "US-ASCII"));
+		String[] tokens = content.split("\\s+");
+		if(tokens.length == 0 || tokens[0].isEmpty()) {
+			throw new IOException("empty checksum file "+file.getAbsolutePath());
+		}
+		return tokens[0];
+	}
+
+	static String digest(File file, String algorithm) throws IOException {
+		MessageDigest md;
+		try {
+			md = MessageDigest.getInstance(algorithm);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(e.getMessage(), e);
+		}
+		InputStream in = new FileInputStream(file);
+		try {
+			byte[] buffer = new byte[64 * 1024];
+			int read;
+			while((read = in.read(buffer)) >= 0) {
+				md.update(buffer, 0, read);
+			}
+		} finally {
+			in.close();
+		}
+		return Util.toHexString(md.digest());
+	}
+}
@@ -0,0 +1,135 @@
+package org.jvnet.hudson.plugins.artifactdownloader.aether;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang.StringUtils;
+import org.eclipse.aether.util.version.GenericVersionScheme;
+import org.eclipse.aether.version.InvalidVersionSpecificationException;
+import org.eclipse.aether.version.Version;
+import org.eclipse.aether.version.VersionConstraint;
+import org.eclipse.aether.version.VersionScheme;
+
+/**
+ * Restricts the versions returned by {@link RepositoryConnector#listFilteredVersions(String, String, String, String, VersionFilter)}:
+ * a version range, include/exclude regular expressions, the kind of versions and the maximum number
+ * of (newest) versions.
+ */
+public final class VersionFilter {
+
+	/**
+	 * The kind of versions to list.
+	 */
+	public enum Kind {
+		ALL, RELEASES, SNAPSHOTS
+	}
+
+	public static final String ALL_VERSIONS = "[0,)";
+
+	/**
+	 * A filter accepting every version.
+	 */
+	public static final VersionFilter NONE = new VersionFilter(null, null, null, Kind.ALL, 0);
+
+	private static final VersionScheme VERSION_SCHEME = new GenericVersionScheme();
+	private static final Pattern SNAPSHOT_TIMESTAMP = Pattern.compile("^(.*-)?([0-9]{8}\\.[0-9]{6}-[0-9]+)$");
+
+	private final String range;
+	private final VersionConstraint constraint;
+	private final Pattern include;
+	private final Pattern exclude;
+	private final Kind kind;
+	private final int limit;
+
+	/**
+	 * @param range a version range like <code>[1.0,2.0)</code>, blank for all versions
+	 * @param include regular expression a version has to match, blank to include all
+	 * @param exclude regular expression a version must not match, blank to exclude none
+	 * @param kind the kind of versions, <code>null</code> for all
+	 * @param limit the maximum number of versions (the newest ones), <code>0</code> for no limit
+	 * @throws IllegalArgumentException if the range or a pattern is invalid
+	 */
+	public VersionFilter(String range, String include, String exclude, Kind kind, int limit) {
+		this.range = StringUtils.isBlank(range) ? ALL_VERSIONS : range.trim();
+		try {
+			this.constraint = VERSION_SCHEME.parseVersionConstraint(this.range);
+		} catch (InvalidVersionSpecificationException e) {
+			throw new IllegalArgumentException("invalid version range: "+range, e);
+		}
+		this.include = StringUtils.isBlank(include) ? null : Pattern.compile(include.trim());
+		this.exclude = StringUtils.isBlank(exclude) ? null : Pattern.compile(exclude.trim());
+		this.kind = kind == null ? Kind.ALL : kind;
+		this.limit = Math.max(0, limit);
+	}
+
+	/**
+	 * @return the version range, used to narrow the resolution already
+	 */
+	public String getRange() {
+		return range;
+	}
+
+	/**
+	 * @return the maximum number of versions, <code>0</code> for no limit
+	 */
+	public int getLimit() {
+		return limit;
+	}
+
+	/**
+	 * @return <code>true</code> if the given number of accepted versions reached the limit
+	 */
+	public boolean isLimitReached(int accepted) {
+		return limit > 0 && accepted >= limit;
+	}
+
+	public boolean accept(Version version) {
+		if(!constraint.containsVersion(version)) {
+			return false;
+		}
+		String v = version.toString();
+		if(kind != Kind.ALL && (kind == Kind.SNAPSHOTS) != isSnapshot(v)) {
+			return false;
+		}
+		if(include != null && !include.matcher(v).matches()) {
+			return false;
+		}
+		return exclude == null || !exclude.matcher(v).matches();
+	}
+
+	/**
+	 * @return the parsed version if it is accepted, <code>null</code> otherwise
+	 */
+	public Version accept(String version) throws InvalidVersionSpecificationException {
+		Version v = VERSION_SCHEME.parseVersion(version);
+		return accept(v) ? v : null;
+	}
+
+	/**
+	 * @return the base version of a timestamped snapshot (<code>1.0-20200101.123456-1</code> becomes
+	 *         <code>1.0-SNAPSHOT</code>), any other version unchanged
+	 */
+	static String toBaseVersion(String version) {
+		Matcher m = SNAPSHOT_TIMESTAMP.matcher(version);
+		return m.matches() ? StringUtils.defaultString(m.group(1))+"SNAPSHOT" : version;
+	}
+
+	static boolean isSnapshot(String version) {
+		return version.endsWith("SNAPSHOT") || SNAPSHOT_TIMESTAMP.matcher(version).matches();
+	}
+
+	@Override
+	public String toString() {
+		return range+"|"+(include == null ? "" : include.pattern())+"|"+(exclude == null ? "" : exclude.pattern())+"|"+kind+"|"+limit;
+	}
+
+	@Override
+	public int hashCode() {
+		return toString().hashCode();
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return obj instanceof VersionFilter && toString().equals(obj.toString());
+	}
+}
@@ -0,0 +1,21 @@
+Behaviour.specify("SELECT.version-parameter-choices", "version-parameter-choices", 0, function(select) {
+    var url = select.getAttribute("data-choices-url");
+    var replaceOptions = function(choices) {
+        while (select.options.length > 0) {
+            select.remove(0);
+        }
+        for (var i = 0; i < choices.length; i++) {
+            select.options.add(new Option(choices[i], choices[i]));
+        }
+        select.disabled = false;
+    };
+    new Ajax.Request(url, {
+        method: "get",
+        onSuccess: function(rsp) {
+            replaceOptions(rsp.responseText.evalJSON().choices || []);
+        },
+        onFailure: function(rsp) {
+            replaceOptions([select.getAttribute("data-error") + " (" + rsp.status + ")"]);
+        }
+    });
+});
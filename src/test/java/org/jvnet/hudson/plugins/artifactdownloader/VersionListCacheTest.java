@@ -0,0 +1,129 @@
+package org.jvnet.hudson.plugins.artifactdownloader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.jvnet.hudson.plugins.artifactdownloader.aether.VersionFilter;
+
+public class VersionListCacheTest {
+
+    private static final RepositoryConfig REPO = new RepositoryConfig("repo", "default", "http://localhost/repo/", null, null, false);
+
+    /**
+     * Answers every load with the artifact id and the number of the load, e.g. <code>a-1</code>.
+     */
+    private static class CountingLoader implements VersionListCache.Loader {
+        final AtomicInteger loads = new AtomicInteger();
+
+        @Override
+        public List<String> load(RepositoryConfig repo, String groupId, String artifactId, VersionFilter filter) throws IOException {
+            return Arrays.asList(artifactId + "-" + loads.incrementAndGet());
+        }
+    }
+
+    @Test
+    public void testFreshEntryIsServedFromCache() throws IOException {
+        CountingLoader loader = new CountingLoader();
+        VersionListCache cache = new VersionListCache(loader);
+        assertEquals(Arrays.asList("a-1"), cache.getVersions(REPO, "g", "a"));
+        assertEquals(Arrays.asList("a-1"), cache.getVersions(REPO, "g", "a"));
+        assertEquals(1, loader.loads.get());
+    }
+
+    @Test
+    public void testExpiredEntryIsServedWhileRefreshed() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger loads = new AtomicInteger();
+        VersionListCache cache = new VersionListCache(new VersionListCache.Loader() {
+            @Override
+            public List<String> load(RepositoryConfig repo, String groupId, String artifactId, VersionFilter filter) throws IOException {
+                if (loads.incrementAndGet() > 1) {
+                    try {
+                        release.await(30, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                }
+                return Arrays.asList("1." + loads.get());
+            }
+        });
+        cache.configure(1, 10);
+        assertEquals(Arrays.asList("1.1"), cache.getVersions(REPO, "g", "a"));
+        Thread.sleep(1100);
+
+        // the refresh is blocked, the stale versions are returned right away
+        assertEquals(Arrays.asList("1.1"), cache.getVersions(REPO, "g", "a"));
+        assertEquals(Arrays.asList("1.1"), cache.getVersions(REPO, "g", "a"));
+        release.countDown();
+
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
+        while (!Arrays.asList("1.2").equals(cache.peek("repo", "g", "a", VersionFilter.NONE)) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(Arrays.asList("1.2"), cache.getVersions(REPO, "g", "a"));
+        // a single refresh although the stale entry was served twice
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntryIsEvicted() throws IOException {
+        VersionListCache cache = new VersionListCache(new CountingLoader());
+        cache.configure(300, 2);
+        cache.getVersions(REPO, "g", "a");
+        cache.getVersions(REPO, "g", "b");
+        cache.getVersions(REPO, "g", "a");
+        cache.getVersions(REPO, "g", "c");
+        assertEquals(2, cache.size());
+        assertNotNull(cache.peek("repo", "g", "a", VersionFilter.NONE));
+        assertNull(cache.peek("repo", "g", "b", VersionFilter.NONE));
+        assertNotNull(cache.peek("repo", "g", "c", VersionFilter.NONE));
+    }
+
+    @Test
+    public void testInvalidation() throws IOException {
+        CountingLoader loader = new CountingLoader();
+        VersionListCache cache = new VersionListCache(loader);
+        cache.getVersions(REPO, "g", "a");
+        cache.getVersions(REPO, "g", "b");
+
+        cache.invalidate("repo", "g", "a");
+        assertNull(cache.peek("repo", "g", "a", VersionFilter.NONE));
+        assertNotNull(cache.peek("repo", "g", "b", VersionFilter.NONE));
+        assertEquals(Arrays.asList("a-3"), cache.getVersions(REPO, "g", "a"));
+
+        // as done when the repository configuration is saved
+        cache.invalidateAll();
+        assertEquals(0, cache.size());
+        assertEquals(Arrays.asList("b-4"), cache.getVersions(REPO, "g", "b"));
+    }
+
+    @Test
+    public void testFailedLoadIsNotCached() throws IOException {
+        final AtomicInteger loads = new AtomicInteger();
+        VersionListCache cache = new VersionListCache(new VersionListCache.Loader() {
+            @Override
+            public List<String> load(RepositoryConfig repo, String groupId, String artifactId, VersionFilter filter) throws IOException {
+                if (loads.incrementAndGet() == 1) {
+                    throw new IOException("repository unavailable");
+                }
+                return Arrays.asList("1.0");
+            }
+        });
+        try {
+            cache.getVersions(REPO, "g", "a");
+            fail("the failure must be reported");
+        } catch (IOException expected) {
+        }
+        assertEquals(Arrays.asList("1.0"), cache.getVersions(REPO, "g", "a"));
+    }
+}
@@ -0,0 +1,43 @@
+package org.jvnet.hudson.plugins.artifactdownloader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import hudson.model.Cause;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.ParametersAction;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+public class VersionOverridesTest {
+
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    private FreeStyleBuild build(FreeStyleProject project, String version) throws Exception {
+        if (version == null) {
+            return j.assertBuildStatusSuccess(project.scheduleBuild2(0));
+        }
+        return j.assertBuildStatusSuccess(project.scheduleBuild2(0, new Cause.UserIdCause(),
+                new ParametersAction(new VersionParameterValue("org.example", "lib", "LIB_VERSION", version))));
+    }
+
+    @Test
+    public void testOverrideAppliesToItsBuildOnly() throws Exception {
+        FreeStyleProject project = j.createFreeStyleProject();
+        FreeStyleBuild first = build(project, "1.0");
+        FreeStyleBuild second = build(project, "2.0");
+        FreeStyleBuild plain = build(project, null);
+
+        assertEquals("1.0", VersionOverrides.of(first).get("org.example", "lib").getVersion());
+        assertEquals("2.0", VersionOverrides.of(second).get("org.example", "lib").getVersion());
+        assertNull(VersionOverrides.of(plain).get("org.example", "lib"));
+        assertNull(VersionOverrides.of(first).get("org.example", "other"));
+        // the parameters of a build are indexed once
+        assertSame(VersionOverrides.of(first), VersionOverrides.of(first));
+    }
+}
@@ -0,0 +1,143 @@
+package org.jvnet.hudson.plugins.repositoryconnector.aether;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.jvnet.hudson.plugins.artifactdownloader.ArtifactConfig;
+import org.jvnet.hudson.plugins.artifactdownloader.RepositoryConfig;
+import org.jvnet.hudson.plugins.artifactdownloader.aether.RepositoryConnector;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+/**
+ * Two builds resolving the same artifact into the same local repository at the same time share
+ * a single transfer, and a failed transfer is not handed to the next attempt.
+ */
+public class ConcurrentDownloadTest {
+
+	private static final String PATH = "/repo/org/example/shared/1.0/shared-1.0.jar";
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	@Rule
+	public StubRepository server = new StubRepository();
+
+	private final byte[] content = "shared artifact".getBytes();
+	private final CountDownLatch release = new CountDownLatch(1);
+	private volatile int status = 200;
+	private File localRepository;
+	private ExecutorService executor;
+
+	@Before
+	public void setUp() throws IOException {
+		localRepository = tmp.newFolder();
+		executor = Executors.newCachedThreadPool();
+		server.handle(PATH, new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				if(!PATH.equals(exchange.getRequestURI().getPath())) {
+					StubRepository.respond(exchange, 404, "");
+					return;
+				}
+				try {
+					// hold the transfer until the second caller is waiting for it
+					release.await(30, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				StubRepository.respond(exchange, status, status == 200 ? content : new byte[0]);
+			}
+		});
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	private Future<Boolean> download(final File target, final ByteArrayOutputStream log) {
+		return executor.submit(new Callable<Boolean>() {
+			@Override
+			public Boolean call() throws Exception {
+				RepositoryConfig repo = server.repo("shared", "/repo/");
+				// a failed transfer is reported right away
+				repo.setRetries(0);
+				RepositoryConnector rc = new RepositoryConnector(new PrintStream(log, true), Collections.singletonList(repo), localRepository);
+				try {
+					return rc.downloadArtifacts(Collections.singletonList(
+							new ArtifactConfig("org.example", "shared", null, "1.0", "jar", target.getAbsolutePath())));
+				} finally {
+					rc.close();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Starts two downloads of the artifact, the second one once the first one's transfer is running,
+	 * and lets the transfer finish as soon as the second one waits for it.
+	 */
+	private boolean[] downloadConcurrently(File first, File second) throws Exception {
+		Future<Boolean> owner = download(first, new ByteArrayOutputStream());
+		while(server.count("GET", PATH) == 0) {
+			Thread.sleep(10);
+		}
+		ByteArrayOutputStream log = new ByteArrayOutputStream();
+		Future<Boolean> waiter = download(second, log);
+		long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
+		while(!log.toString().contains("waiting for concurrent download") && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		release.countDown();
+		return new boolean[] { owner.get(30, TimeUnit.SECONDS), waiter.get(30, TimeUnit.SECONDS) };
+	}
+
+	@Test
+	public void testConcurrentCallersShareOneTransfer() throws Exception {
+		File first = new File(tmp.getRoot(), "first.jar");
+		File second = new File(tmp.getRoot(), "second.jar");
+		boolean[] delivered = downloadConcurrently(first, second);
+		assertTrue(delivered[0]);
+		assertTrue(delivered[1]);
+		assertEquals(1, server.count("GET", PATH));
+		assertArrayEquals(content, FileUtils.readFileToByteArray(first));
+		assertArrayEquals(content, FileUtils.readFileToByteArray(second));
+	}
+
+	@Test
+	public void testFailureDoesNotPoisonNextAttempt() throws Exception {
+		status = 500;
+		boolean[] delivered = downloadConcurrently(new File(tmp.getRoot(), "first.jar"), new File(tmp.getRoot(), "second.jar"));
+		assertFalse(delivered[0]);
+		assertFalse(delivered[1]);
+		assertEquals(1, server.count("GET", PATH));
+
+		status = 200;
+		File retry = new File(tmp.getRoot(), "retry.jar");
+		assertTrue(download(retry, new ByteArrayOutputStream()).get(30, TimeUnit.SECONDS));
+		assertEquals(2, server.count("GET", PATH));
+		assertArrayEquals(content, FileUtils.readFileToByteArray(retry));
+	}
+}
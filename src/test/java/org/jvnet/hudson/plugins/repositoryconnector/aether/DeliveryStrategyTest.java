@@ -0,0 +1,54 @@
+package org.jvnet.hudson.plugins.repositoryconnector.aether;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.jvnet.hudson.plugins.artifactdownloader.aether.DeliveryStrategy;
+
+public class DeliveryStrategyTest {
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	private void assertSourceSurvivesLinkedTarget(DeliveryStrategy strategy) throws IOException {
+		byte[] content = "artifact content".getBytes("UTF-8");
+		File source = tmp.newFile();
+		FileUtils.writeByteArrayToFile(source, content);
+		File target = new File(tmp.getRoot(), "target-"+strategy);
+		// an earlier delivery linked the target to the cached artifact
+		Files.createLink(target.toPath(), source.toPath());
+
+		strategy.deliverWithFallback(source.toPath(), target.toPath());
+
+		assertArrayEquals(content, FileUtils.readFileToByteArray(source));
+		assertArrayEquals(content, FileUtils.readFileToByteArray(target));
+	}
+
+	@Test
+	public void testTransferOverLinkedTarget() throws IOException {
+		assertSourceSurvivesLinkedTarget(DeliveryStrategy.TRANSFER);
+	}
+
+	@Test
+	public void testStreamOverLinkedTarget() throws IOException {
+		assertSourceSurvivesLinkedTarget(DeliveryStrategy.STREAM);
+	}
+
+	@Test
+	public void testHardLinkToItself() throws IOException {
+		byte[] content = "artifact content".getBytes("UTF-8");
+		File source = tmp.newFile();
+		FileUtils.writeByteArrayToFile(source, content);
+
+		DeliveryStrategy.HARD_LINK.deliverWithFallback(source.toPath(), source.toPath());
+
+		assertArrayEquals(content, FileUtils.readFileToByteArray(source));
+	}
+}
@@ -0,0 +1,53 @@
+package org.jvnet.hudson.plugins.repositoryconnector.aether;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.jvnet.hudson.plugins.artifactdownloader.ArtifactConfig;
+import org.jvnet.hudson.plugins.artifactdownloader.aether.RepositoryConnector;
+
+/**
+ * The same artifact configured several times with different targets is downloaded once and
+ * delivered to every target.
+ */
+public class DuplicateArtifactTest {
+
+	private static final String PATH = "/repo/org/example/twice/1.0/twice-1.0.jar";
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	@Rule
+	public StubRepository server = new StubRepository();
+
+	@Test
+	public void testDownloadedOnceForAllTargets() throws IOException {
+		byte[] content = "artifact wanted twice".getBytes("UTF-8");
+		server.put(PATH, content);
+		File first = new File(tmp.getRoot(), "twice.jar");
+		File second = new File(tmp.getRoot(), "renamed.jar");
+
+		RepositoryConnector rc = new RepositoryConnector(System.out, Collections.singletonList(server.repo("twice", "/repo/")), tmp.newFolder());
+		try {
+			assertTrue(rc.downloadArtifacts(Arrays.asList(
+					new ArtifactConfig("org.example", "twice", null, "1.0", "jar", first.getAbsolutePath()),
+					new ArtifactConfig("org.example", "twice", null, "1.0", "jar", second.getAbsolutePath()))));
+		} finally {
+			rc.close();
+		}
+
+		assertEquals(1, server.count("GET", PATH));
+		assertArrayEquals(content, FileUtils.readFileToByteArray(first));
+		assertArrayEquals(content, FileUtils.readFileToByteArray(second));
+	}
+}
@@ -0,0 +1,85 @@
+package org.jvnet.hudson.plugins.repositoryconnector.aether;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import hudson.Util;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.jvnet.hudson.plugins.artifactdownloader.ArtifactConfig;
+import org.jvnet.hudson.plugins.artifactdownloader.aether.RepositoryConnector;
+
+/**
+ * In incremental mode a target is only downloaded again if it does not match the checksum
+ * published for the artifact.
+ */
+public class IncrementalDownloadTest {
+
+	private static final String PATH = "/repo/org/example/lib/1.0/lib-1.0.jar";
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	@Rule
+	public StubRepository server = new StubRepository();
+
+	private final byte[] published = "published content".getBytes();
+
+	private static String sha1(byte[] content) throws NoSuchAlgorithmException {
+		return Util.toHexString(MessageDigest.getInstance("SHA-1").digest(content));
+	}
+
+	/**
+	 * Downloads the artifact incrementally into a target which already holds the given content.
+	 */
+	private File download(byte[] existing) throws IOException {
+		File target = new File(tmp.getRoot(), "lib.jar");
+		FileUtils.writeByteArrayToFile(target, existing);
+		RepositoryConnector rc = new RepositoryConnector(System.out, Collections.singletonList(server.repo("incremental", "/repo/")), tmp.newFolder());
+		rc.setIncremental(true);
+		try {
+			assertTrue(rc.downloadArtifacts(Collections.singletonList(
+					new ArtifactConfig("org.example", "lib", null, "1.0", "jar", target.getAbsolutePath()))));
+		} finally {
+			rc.close();
+		}
+		return target;
+	}
+
+	@Test
+	public void testMatchingChecksumSkipsDownload() throws Exception {
+		server.put(PATH, published);
+		server.put(PATH+".sha1", sha1(published));
+		File target = download(published);
+		assertEquals(1, server.count("GET", PATH+".sha1"));
+		assertEquals(0, server.count("GET", PATH));
+		assertArrayEquals(published, FileUtils.readFileToByteArray(target));
+	}
+
+	@Test
+	public void testDifferentChecksumDownloadsAgain() throws Exception {
+		server.put(PATH, published);
+		server.put(PATH+".sha1", sha1(published));
+		File target = download("outdated content".getBytes());
+		assertEquals(1, server.count("GET", PATH));
+		assertArrayEquals(published, FileUtils.readFileToByteArray(target));
+	}
+
+	@Test
+	public void testMissingChecksumDownloads() throws Exception {
+		server.put(PATH, published);
+		File target = download("outdated content".getBytes());
+		assertEquals(1, server.count("GET", PATH));
+		assertArrayEquals(published, FileUtils.readFileToByteArray(target));
+	}
+}
@@ -0,0 +1,60 @@
+package org.jvnet.hudson.plugins.repositoryconnector.aether;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.jvnet.hudson.plugins.artifactdownloader.aether.LocalRepositoryEvictor;
+
+public class LocalRepositoryEvictorTest {
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	private File version(String version, long lastAccess) throws IOException {
+		File dir = new File(tmp.getRoot(), "org/example/demo/"+version);
+		FileUtils.writeByteArrayToFile(new File(dir, "demo-"+version+".jar"), new byte[1000]);
+		assertTrue(dir.setLastModified(lastAccess));
+		return dir;
+	}
+
+	@Test
+	public void testEvictsLeastRecentlyUsed() throws IOException {
+		File oldest = version("1.0", 1000000L);
+		File used = version("2.0", 3000000L);
+		File newest = version("3.0", 2000000L);
+		long occupied = LocalRepositoryEvictor.get().evict(tmp.getRoot(), 2500);
+		assertEquals(2000, occupied);
+		assertFalse(oldest.exists());
+		assertTrue(used.exists());
+		assertTrue(newest.exists());
+	}
+
+	@Test
+	public void testSkipsPinned() throws Exception {
+		File pinned = version("1.0", 1000000L);
+		File other = version("2.0", 2000000L);
+		LocalRepositoryEvictor.get().pin(pinned);
+		try {
+			LocalRepositoryEvictor.get().evict(tmp.getRoot(), 1500);
+		} finally {
+			LocalRepositoryEvictor.get().unpin(pinned);
+		}
+		assertTrue(pinned.exists());
+		assertFalse(other.exists());
+	}
+
+	@Test
+	public void testMeasuresWithoutQuota() throws IOException {
+		File dir = version("1.0", 1000000L);
+		assertEquals(1000, LocalRepositoryEvictor.get().evict(tmp.getRoot(), 0));
+		assertTrue(dir.exists());
+	}
+}
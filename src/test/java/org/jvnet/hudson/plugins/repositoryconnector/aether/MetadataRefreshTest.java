@@ -0,0 +1,49 @@
+package org.jvnet.hudson.plugins.repositoryconnector.aether;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.aether.version.Version;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.jvnet.hudson.plugins.artifactdownloader.aether.RepositoryConnector;
+
+/**
+ * Versions published after a listing must show up in the next listing from the same shared
+ * local repository, the metadata has to be checked again by every session.
+ */
+public class MetadataRefreshTest {
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	@Rule
+	public StubRepository server = new StubRepository();
+
+	private void publish(String versions) throws IOException {
+		server.put("/repo/org/example/refresh/maven-metadata.xml", "<?xml version=\"1.0\" encoding=\"UTF-8\"?><metadata>"
+				+ "<groupId>org.example</groupId><artifactId>refresh</artifactId><versioning>"
+				+ "<versions>"+versions+"</versions></versioning></metadata>");
+	}
+
+	private List<Version> list() throws Exception {
+		RepositoryConnector rc = new RepositoryConnector(System.out, Collections.singletonList(server.repo("refresh", "/repo/")), tmp.getRoot());
+		try {
+			return rc.listVersions("org.example", "refresh", null, null, null);
+		} finally {
+			rc.close();
+		}
+	}
+
+	@Test
+	public void testNewVersionIsListed() throws Exception {
+		publish("<version>1.0</version>");
+		assertEquals("[1.0]", list().toString());
+		publish("<version>1.0</version><version>1.1</version>");
+		assertEquals("[1.0, 1.1]", list().toString());
+	}
+}
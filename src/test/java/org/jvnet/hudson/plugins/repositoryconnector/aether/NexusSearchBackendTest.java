@@ -0,0 +1,120 @@
+package org.jvnet.hudson.plugins.repositoryconnector.aether;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.jvnet.hudson.plugins.repositoryconnector.aether.StubRepository.respond;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.aether.version.Version;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.plugins.artifactdownloader.RepositoryConfig;
+import org.jvnet.hudson.plugins.artifactdownloader.aether.NexusSearchBackend;
+import org.jvnet.hudson.plugins.artifactdownloader.aether.RepositoryConnector;
+import org.jvnet.hudson.plugins.artifactdownloader.aether.VersionFilter;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+public class NexusSearchBackendTest {
+
+	private static final String METADATA = "<?xml version=\"1.0\" encoding=\"UTF-8\"?><metadata>"
+			+ "<groupId>org.example</groupId><artifactId>demo</artifactId><versioning>"
+			+ "<versions><version>0.9</version><version>1.0</version></versions>"
+			+ "</versioning></metadata>";
+
+	@Rule
+	public StubRepository server = new StubRepository();
+
+	private final List<String> searches = Collections.synchronizedList(new ArrayList<String>());
+	private volatile boolean searchAvailable = true;
+
+	@Before
+	public void setUp() throws IOException {
+		server.handle("/service/rest/v1/search", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				String query = exchange.getRequestURI().getQuery();
+				searches.add(query);
+				if(!searchAvailable) {
+					respond(exchange, 404, "");
+				} else if(query.contains("maven.artifactId=snapshots")) {
+					respond(exchange, 200, "{\"items\":[{\"version\":\"2.0-20200102.101010-2\"},{\"version\":\"2.0-20200101.123456-1\"},"
+							+ "{\"version\":\"1.0\"}],\"continuationToken\":null}");
+				} else if(query.contains("continuationToken=page2")) {
+					respond(exchange, 200, "{\"items\":[{\"version\":\"2.0\"},{\"version\":\"1.0\"}],\"continuationToken\":null}");
+				} else {
+					respond(exchange, 200, "{\"items\":[{\"version\":\"3.0\"},{\"version\":\"2.1\"}],\"continuationToken\":\"page2\"}");
+				}
+			}
+		});
+		server.put("/repository/releases/org/example/demo/maven-metadata.xml", METADATA);
+	}
+
+	private RepositoryConfig repo() {
+		return new RepositoryConfig("releases", "default", server.url("/repository/releases/"), null, null, true);
+	}
+
+	@Test
+	public void testPagedVersionsNewestFirst() throws IOException {
+		List<Version> versions = new NexusSearchBackend().listVersions(repo(), "org.example", "demo", VersionFilter.NONE);
+		assertEquals("[3.0, 2.1, 2.0, 1.0]", versions.toString());
+		assertEquals(2, searches.size());
+		assertTrue(searches.get(0).contains("repository=releases"));
+		assertTrue(searches.get(0).contains("direction=desc"));
+	}
+
+	@Test
+	public void testLimitStopsPaging() throws IOException {
+		List<Version> versions = new NexusSearchBackend().listVersions(repo(), "org.example", "demo", new VersionFilter(null, null, null, null, 2));
+		assertEquals("[3.0, 2.1]", versions.toString());
+		assertEquals(1, searches.size());
+	}
+
+	@Test
+	public void testFilterAppliesBeforeLimit() throws IOException {
+		VersionFilter filter = new VersionFilter("[1.0,3.0)", null, "2\\.1", null, 2);
+		List<Version> versions = new NexusSearchBackend().listVersions(repo(), "org.example", "demo", filter);
+		assertEquals("[2.0, 1.0]", versions.toString());
+	}
+
+	@Test
+	public void testTimestampedSnapshotsListedOnce() throws IOException {
+		List<Version> versions = new NexusSearchBackend().listVersions(repo(), "org.example", "snapshots", new VersionFilter(null, null, null, null, 2));
+		assertEquals("[2.0-SNAPSHOT, 1.0]", versions.toString());
+	}
+
+	@Test(expected = IOException.class)
+	public void testMissingEndpoint() throws IOException {
+		searchAvailable = false;
+		new NexusSearchBackend().listVersions(repo(), "org.example", "demo", VersionFilter.NONE);
+	}
+
+	@Test
+	public void testConnectorUsesSearch() throws Exception {
+		RepositoryConnector rc = new RepositoryConnector(System.out, Collections.singletonList(repo()));
+		try {
+			List<Version> versions = rc.listVersions("org.example", "demo", null, null, null);
+			assertEquals("[1.0, 2.0, 2.1, 3.0]", versions.toString());
+		} finally {
+			rc.close();
+		}
+	}
+
+	@Test
+	public void testConnectorFallsBackToMetadata() throws Exception {
+		searchAvailable = false;
+		RepositoryConnector rc = new RepositoryConnector(System.out, Collections.singletonList(repo()));
+		try {
+			List<Version> versions = rc.listVersions("org.example", "demo", null, null, null);
+			assertEquals("[0.9, 1.0]", versions.toString());
+		} finally {
+			rc.close();
+		}
+	}
+}
@@ -0,0 +1,67 @@
+package org.jvnet.hudson.plugins.repositoryconnector.aether;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.aether.repository.RemoteRepository;
+import org.junit.After;
+import org.junit.Test;
+import org.jvnet.hudson.plugins.artifactdownloader.aether.RepositoryHealth;
+
+public class RepositoryHealthTest {
+
+	@After
+	public void reset() {
+		RepositoryHealth.get().reset();
+	}
+
+	private static List<RemoteRepository> repos(String... ids) {
+		List<RemoteRepository> out = new ArrayList<RemoteRepository>();
+		for(String id : ids) {
+			out.add(new RemoteRepository.Builder(id, "default", "http://localhost/"+id+"/").build());
+		}
+		return out;
+	}
+
+	private static String ids(List<RemoteRepository> repos) {
+		StringBuilder out = new StringBuilder();
+		for(RemoteRepository rr : repos) {
+			out.append(rr.getId()).append(' ');
+		}
+		return out.toString().trim();
+	}
+
+	@Test
+	public void testUnsampledRepositoriesComeLast() {
+		RepositoryHealth.get().recordResponse("slow", 50);
+		RepositoryHealth.get().recordResponse("fast", 10);
+		assertEquals("fast slow new1 new2", ids(RepositoryHealth.get().order(repos("new1", "slow", "new2", "fast"))));
+	}
+
+	@Test
+	public void testErrorRateSlowsDown() {
+		RepositoryHealth.get().recordResponse("flaky", 10);
+		RepositoryHealth.get().recordFailure("flaky");
+		RepositoryHealth.get().recordResponse("steady", 15);
+		assertEquals("steady flaky", ids(RepositoryHealth.get().order(repos("flaky", "steady"))));
+	}
+
+	@Test
+	public void testManyMixedRepositories() {
+		// sorting sampled and unsampled repositories together must not violate the comparator contract
+		List<RemoteRepository> repos = new ArrayList<RemoteRepository>();
+		for(int i = 0; i < 100; i++) {
+			String id = "repo"+i;
+			if(i % 3 != 0) {
+				RepositoryHealth.get().recordResponse(id, (i * 37) % 101);
+			}
+			repos.addAll(repos(id));
+		}
+		List<RemoteRepository> ordered = RepositoryHealth.get().order(repos);
+		assertEquals(repos.size(), ordered.size());
+		assertEquals(Arrays.asList("repo0", "repo3"), Arrays.asList(ordered.get(66).getId(), ordered.get(67).getId()));
+	}
+}
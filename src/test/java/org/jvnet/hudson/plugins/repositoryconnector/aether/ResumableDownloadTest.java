@@ -0,0 +1,117 @@
+package org.jvnet.hudson.plugins.repositoryconnector.aether;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.jvnet.hudson.plugins.artifactdownloader.ArtifactConfig;
+import org.jvnet.hudson.plugins.artifactdownloader.RepositoryConfig;
+import org.jvnet.hudson.plugins.artifactdownloader.aether.RepositoryConnector;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+/**
+ * Serves a large artifact whose first transfer breaks off in the middle, the retry has to
+ * continue with a range request.
+ */
+public class ResumableDownloadTest {
+
+	private static final String PATH = "/repo/org/example/big/1.0/big-1.0.jar";
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	private final byte[] content = new byte[1024 * 1024];
+	private final List<String> ranges = Collections.synchronizedList(new ArrayList<String>());
+	private volatile int resets;
+
+	@Rule
+	public StubRepository server = new StubRepository();
+
+	@Before
+	public void setUp() {
+		new Random(42).nextBytes(content);
+		server.handle(PATH, new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				if(!PATH.equals(exchange.getRequestURI().getPath())) {
+					// the context matches the checksum files as well
+					StubRepository.respond(exchange, 404, "");
+					return;
+				}
+				String range = exchange.getRequestHeaders().getFirst("Range");
+				ranges.add(String.valueOf(range));
+				OutputStream out = exchange.getResponseBody();
+				if(resets > 0) {
+					resets--;
+					// announce the whole file, send half of it and drop the connection
+					exchange.sendResponseHeaders(200, content.length);
+					out.write(content, 0, content.length / 2);
+					out.flush();
+					out.close();
+					return;
+				}
+				int offset = range == null ? 0 : Integer.parseInt(range.replaceAll("bytes=(\\d+)-.*", "$1"));
+				if(offset > 0) {
+					exchange.getResponseHeaders().add("Content-Range", "bytes "+offset+"-"+(content.length - 1)+"/"+content.length);
+					exchange.sendResponseHeaders(206, content.length - offset);
+				} else {
+					exchange.sendResponseHeaders(200, content.length);
+				}
+				out.write(content, offset, content.length - offset);
+				out.close();
+			}
+		});
+	}
+
+	private RepositoryConfig repo(int retries) {
+		RepositoryConfig repo = server.repo("resume", "/repo/");
+		repo.setRetries(retries);
+		repo.setRetryBackoff(10);
+		return repo;
+	}
+
+	private boolean download(RepositoryConfig repo, File target) throws IOException {
+		RepositoryConnector rc = new RepositoryConnector(System.out, Collections.singletonList(repo));
+		try {
+			return rc.downloadArtifacts(Collections.singletonList(
+					new ArtifactConfig("org.example", "big", null, "1.0", "jar", target.getAbsolutePath())));
+		} finally {
+			rc.close();
+		}
+	}
+
+	@Test
+	public void testResumesAfterConnectionReset() throws IOException {
+		resets = 1;
+		File target = new File(tmp.getRoot(), "big.jar");
+		assertTrue(download(repo(2), target));
+		assertArrayEquals(content, FileUtils.readFileToByteArray(target));
+		assertEquals(2, ranges.size());
+		assertEquals("null", ranges.get(0));
+		assertTrue(ranges.get(1), ranges.get(1).matches("bytes=[1-9][0-9]*-"));
+	}
+
+	@Test
+	public void testFailsWithoutRetries() throws IOException {
+		resets = 1;
+		File target = new File(tmp.getRoot(), "big.jar");
+		assertFalse(download(repo(0), target));
+		assertEquals(1, ranges.size());
+	}
+}
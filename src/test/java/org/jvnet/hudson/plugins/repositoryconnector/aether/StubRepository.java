@@ -0,0 +1,110 @@
+package org.jvnet.hudson.plugins.repositoryconnector.aether;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.rules.ExternalResource;
+import org.jvnet.hudson.plugins.artifactdownloader.RepositoryConfig;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A repository served by a local HTTP server for the duration of a test. Files put into it are
+ * served by their path, anything else is answered with 404. Tests needing more control register
+ * handlers for their own contexts. All requests are recorded as <code>METHOD path</code>.
+ */
+public class StubRepository extends ExternalResource {
+
+	private final Map<String, byte[]> files = new ConcurrentHashMap<String, byte[]>();
+	private final List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+	private HttpServer server;
+
+	@Override
+	protected void before() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		handle("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				byte[] body = files.get(exchange.getRequestURI().getPath());
+				if(body == null) {
+					respond(exchange, 404, new byte[0]);
+				} else {
+					respond(exchange, 200, body);
+				}
+			}
+		});
+		server.start();
+	}
+
+	@Override
+	protected void after() {
+		server.stop(0);
+	}
+
+	/**
+	 * Serves the handler's responses for all paths starting with the given context.
+	 */
+	public void handle(String context, final HttpHandler handler) {
+		server.createContext(context, new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				requests.add(exchange.getRequestMethod()+" "+exchange.getRequestURI().getPath());
+				handler.handle(exchange);
+			}
+		});
+	}
+
+	public void put(String path, byte[] content) {
+		files.put(path, content);
+	}
+
+	public void put(String path, String content) throws IOException {
+		put(path, content.getBytes("UTF-8"));
+	}
+
+	/**
+	 * @return the requests received so far, as <code>METHOD path</code>
+	 */
+	public List<String> getRequests() {
+		synchronized (requests) {
+			return new ArrayList<String>(requests);
+		}
+	}
+
+	/**
+	 * @return the number of requests for the given path
+	 */
+	public int count(String method, String path) {
+		return Collections.frequency(getRequests(), method+" "+path);
+	}
+
+	public String url(String path) {
+		return "http://127.0.0.1:"+server.getAddress().getPort()+path;
+	}
+
+	/**
+	 * @return a default layout repository served below the given path
+	 */
+	public RepositoryConfig repo(String id, String path) {
+		return new RepositoryConfig(id, "default", url(path), null, null, false);
+	}
+
+	public static void respond(HttpExchange exchange, int status, String body) throws IOException {
+		respond(exchange, status, body.getBytes("UTF-8"));
+	}
+
+	public static void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+		exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+		OutputStream out = exchange.getResponseBody();
+		out.write(body);
+		out.close();
+	}
+}
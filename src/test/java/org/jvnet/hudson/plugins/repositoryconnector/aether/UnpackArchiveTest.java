@@ -0,0 +1,91 @@
+package org.jvnet.hudson.plugins.repositoryconnector.aether;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.jvnet.hudson.plugins.artifactdownloader.ArtifactConfig;
+import org.jvnet.hudson.plugins.artifactdownloader.aether.RepositoryConnector;
+
+/**
+ * Serves zip artifacts which are unpacked into their target directory: the entries are selected
+ * by the include and exclude patterns and must not leave the target directory.
+ */
+public class UnpackArchiveTest {
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	@Rule
+	public StubRepository server = new StubRepository();
+
+	private static byte[] zip(String... names) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ZipOutputStream zip = new ZipOutputStream(bytes);
+		for(String name : names) {
+			zip.putNextEntry(new ZipEntry(name));
+			zip.write(name.getBytes("UTF-8"));
+			zip.closeEntry();
+		}
+		zip.close();
+		return bytes.toByteArray();
+	}
+
+	private void publish(String artifactId, String extension, byte[] content) {
+		server.put("/repo/org/example/"+artifactId+"/1.0/"+artifactId+"-1.0."+extension, content);
+	}
+
+	private boolean download(String artifactId, String extension, File target, String includes, String excludes) throws IOException {
+		RepositoryConnector rc = new RepositoryConnector(System.out, Collections.singletonList(server.repo("unpack", "/repo/")), tmp.newFolder());
+		rc.setUnpack(true);
+		rc.setUnpackIncludes(includes);
+		rc.setUnpackExcludes(excludes);
+		try {
+			return rc.downloadArtifacts(Collections.singletonList(
+					new ArtifactConfig("org.example", artifactId, null, "1.0", extension, target.getAbsolutePath())));
+		} finally {
+			rc.close();
+		}
+	}
+
+	@Test
+	public void testPatternsSelectEntries() throws IOException {
+		publish("bundle", "zip", zip("bin/run.sh", "lib/a.jar", "docs/readme.txt", "docs/guide.md"));
+		File out = new File(tmp.getRoot(), "out");
+		assertTrue(download("bundle", "zip", new File(out, "bundle.zip"), "bin/**, docs/**", "**/*.txt"));
+		assertTrue(new File(out, "bin/run.sh").isFile());
+		assertTrue(new File(out, "docs/guide.md").isFile());
+		assertFalse(new File(out, "docs/readme.txt").exists());
+		assertFalse(new File(out, "lib/a.jar").exists());
+		assertFalse(new File(out, "bundle.zip").exists());
+	}
+
+	@Test
+	public void testEntryOutsideTargetIsRejected() throws IOException {
+		publish("evil", "zip", zip("ok.txt", "../evil.txt"));
+		File out = new File(tmp.getRoot(), "out");
+		assertFalse(download("evil", "zip", new File(out, "evil.zip"), null, null));
+		assertFalse(new File(tmp.getRoot(), "evil.txt").exists());
+	}
+
+	@Test
+	public void testJarIsCopied() throws IOException {
+		byte[] jar = zip("META-INF/MANIFEST.MF");
+		publish("library", "jar", jar);
+		File target = new File(tmp.getRoot(), "library.jar");
+		assertTrue(download("library", "jar", target, null, null));
+		assertArrayEquals(jar, FileUtils.readFileToByteArray(target));
+		assertFalse(new File(tmp.getRoot(), "META-INF").exists());
+	}
+}